@@ -0,0 +1,110 @@
+package io.github.garysheppardjr.layers;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.SpatialReferences;
+import com.esri.arcgisruntime.mapping.view.Graphic;
+import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares allocation with graphic pooling off and on, under the track churn that
+ * StreamServiceListener produces when tracks expire and new ones appear. Run it on a device with
+ * ./gradlew connectedAndroidTest and read the results from logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GraphicPoolBenchmark {
+
+    private static final String TAG = GraphicPoolBenchmark.class.getSimpleName();
+
+    private static final int LIVE_TRACKS = 500;
+    private static final int TRACKS_REPLACED_PER_ROUND = 100;
+    private static final int ROUNDS = 200;
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static class Result {
+
+        private final long graphicsAllocated;
+        private final long bytesAllocated;
+        private final long nanos;
+
+        private Result(long graphicsAllocated, long bytesAllocated, long nanos) {
+            this.graphicsAllocated = graphicsAllocated;
+            this.bytesAllocated = bytesAllocated;
+            this.nanos = nanos;
+        }
+
+    }
+
+    @Test
+    public void poolingReducesAllocationUnderChurn() {
+        // Warm up the runtime and JIT so that neither run pays for it
+        churn(new GraphicPool(0), WARMUP_ROUNDS);
+
+        Result unpooled = churn(new GraphicPool(0), ROUNDS);
+        Result pooled = churn(new GraphicPool(StreamServiceListener.DEFAULT_GRAPHIC_POOL_CAPACITY), ROUNDS);
+
+        Log.i(TAG, String.format("Pooling off: %d graphics, %d bytes, %d ms",
+                unpooled.graphicsAllocated, unpooled.bytesAllocated, unpooled.nanos / 1000000));
+        Log.i(TAG, String.format("Pooling on:  %d graphics, %d bytes, %d ms",
+                pooled.graphicsAllocated, pooled.bytesAllocated, pooled.nanos / 1000000));
+
+        assertEquals(LIVE_TRACKS + (long) ROUNDS * TRACKS_REPLACED_PER_ROUND, unpooled.graphicsAllocated);
+        // Only the initial tracks need new graphics; every replacement reuses an expired one
+        assertEquals(LIVE_TRACKS, pooled.graphicsAllocated);
+        assertTrue(pooled.bytesAllocated < unpooled.bytesAllocated);
+    }
+
+    /**
+     * Keeps LIVE_TRACKS graphics in an overlay, and each round expires the oldest
+     * TRACKS_REPLACED_PER_ROUND of them and adds as many new ones, as StreamServiceListener does.
+     */
+    private static Result churn(GraphicPool pool, int rounds) {
+        GraphicsOverlay overlay = new GraphicsOverlay();
+        ArrayDeque<Graphic> live = new ArrayDeque<>(LIVE_TRACKS);
+        long bytesBefore = getBytesAllocated();
+        long start = System.nanoTime();
+        int track = 0;
+        for (int i = 0; i < LIVE_TRACKS; i++) {
+            live.add(addTrack(pool, overlay, track++));
+        }
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < TRACKS_REPLACED_PER_ROUND; i++) {
+                Graphic expired = live.poll();
+                overlay.getGraphics().remove(expired);
+                pool.release(expired);
+            }
+            for (int i = 0; i < TRACKS_REPLACED_PER_ROUND; i++) {
+                live.add(addTrack(pool, overlay, track++));
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long bytesAllocated = getBytesAllocated() - bytesBefore;
+        overlay.getGraphics().clear();
+        return new Result(pool.getMissCount(), bytesAllocated, nanos);
+    }
+
+    private static Graphic addTrack(GraphicPool pool, GraphicsOverlay overlay, int track) {
+        Graphic graphic = pool.acquire();
+        graphic.setGeometry(new Point(-117.2 + (track % 100) * 0.01, 34.05, SpatialReferences.getWgs84()));
+        graphic.getAttributes().put("track_id", "track" + track);
+        overlay.getGraphics().add(graphic);
+        return graphic;
+    }
+
+    private static long getBytesAllocated() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+}
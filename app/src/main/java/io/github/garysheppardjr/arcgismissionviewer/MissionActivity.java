@@ -4,32 +4,34 @@ import android.os.Bundle;
 import android.util.Log;
 
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
-import com.esri.arcgisruntime.concurrent.ListenableFuture;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
+import com.esri.arcgisruntime.mapping.view.DrawStatus;
+import com.esri.arcgisruntime.mapping.view.DrawStatusChangedEvent;
+import com.esri.arcgisruntime.mapping.view.DrawStatusChangedListener;
 import com.esri.arcgisruntime.mapping.view.Graphic;
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
 import com.esri.arcgisruntime.mapping.view.MapView;
 import com.esri.arcgisruntime.portal.Portal;
-import com.esri.arcgisruntime.portal.PortalInfo;
 import com.esri.arcgisruntime.portal.PortalItem;
-import com.esri.arcgisruntime.security.OAuthTokenCredential;
 import com.esri.arcgisruntime.symbology.Renderer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
+import io.github.garysheppardjr.layers.RendererCache;
 import io.github.garysheppardjr.layers.StreamServiceListener;
 
 public class MissionActivity extends ArcGISOAuthActivity {
@@ -63,8 +65,24 @@ public class MissionActivity extends ArcGISOAuthActivity {
      */
     public static final int RESULT_NO_PORTAL_INFO = 3;
 
+    /**
+     * How long a track can go without updates before it is removed from the map.
+     */
+    private static final long TRACK_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Shared by every mission opened during the life of the process.
+     */
+    private static RendererCache rendererCache;
+
+    /**
+     * Shared by every mission opened during the life of the process.
+     */
+    private static MissionTileCache tileCache;
+
     private final GraphicsOverlay streamGraphicsOverlay = new GraphicsOverlay();
 
+    private CompletableFuture<Void> sessionFuture;
     private MapView mapView;
     private StreamServiceListener streamServiceListener;
 
@@ -82,102 +100,133 @@ public class MissionActivity extends ArcGISOAuthActivity {
             finish();
             return;
         }
-        final String portalUrlFinal = portalUrl;
 
         ArcGISRuntimeEnvironment.setApiKey(BuildConfig.API_KEY);
 
-        Portal portal = new Portal(portalUrl);
-        portal.addDoneLoadingListener(() -> {
-            PortalInfo portalInfo = portal.getPortalInfo();
-            JSONArray servers = null;
-            if (null == portalInfo) {
-                Log.w(TAG, String.format("Could not get Portal info from %s.", portalUrlFinal));
-                setResult(RESULT_NO_PORTAL_INFO);
-                finish();
-                return;
-            } else {
-                try {
-                    String serversUrl = portal.getSharingUrl() + "/portals/" + portalInfo.getOrganizationId() + "/servers?f=json";
-                    Log.d(TAG, "Servers URL: " + serversUrl);
-                    ListenableFuture<String> serversFuture = portal.postRequestAsync(serversUrl);
-                    String serversResponse = serversFuture.get(5, TimeUnit.SECONDS);
-                    JSONObject serversResponseObj = new JSONObject(serversResponse);
-                    servers = serversResponseObj.getJSONArray("servers");
-                } catch (JSONException | ExecutionException | InterruptedException | TimeoutException e) {
-                    Log.w(TAG, e);
-                }
-            }
-            if (null == servers) {
-                servers = new JSONArray();
-            }
-            List<JSONObject> missionServers = new ArrayList<>();
-            for (int i = 0; i < servers.length(); i++) {
-                try {
-                    JSONObject server = servers.getJSONObject(i);
-                    if ("ARCGIS_MISSION_SERVER".equals(server.optString("serverType"))) {
-                        missionServers.add(server);
+        if (null == rendererCache) {
+            rendererCache = new RendererCache(new File(getCacheDir(), "renderers"));
+        }
+        if (null == tileCache) {
+            tileCache = new MissionTileCache(
+                    new File(getCacheDir(), "tiles"),
+                    MissionTileCache.DEFAULT_MAX_SIZE_BYTES,
+                    MissionTileCache.DEFAULT_MAX_PREFETCH_SCALE,
+                    MissionTileCache.DEFAULT_MAX_AGE_MILLIS
+            );
+        }
+
+        sessionFuture = PortalSession.obtain(portalUrl, getString(R.string.oauth_client_id))
+                .handle((session, error) -> {
+                    // An activity destroyed while the session loaded, e.g. by a rotation, leaves
+                    // the mission to the activity that replaced it
+                    if (!isFinishing() && !isDestroyed()) {
+                        openMission(session, error);
                     }
-                } catch (JSONException e) {
-                    Log.w(TAG, e);
-                }
+                    return null;
+                });
+        sessionFuture.exceptionally(e -> {
+            if (!(e instanceof CancellationException)) {
+                Log.e(TAG, "Could not open mission: " + e.getLocalizedMessage(), e);
             }
-            Optional<JSONObject> theMissionServerOptional = missionServers.parallelStream()
-                    .filter(missionServer -> "MissionServer".equals(missionServer.optString("serverFunction")))
-                    .findFirst();
-            if (!theMissionServerOptional.isPresent()) {
-                setResult(RESULT_NO_MISSION_SERVER_FOUND);
-                finish();
-                return;
+            return null;
+        });
+    }
+
+    private void openMission(PortalSession session, Throwable error) {
+        if (null != error) {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            Log.w(TAG, cause.getLocalizedMessage(), cause);
+            if (cause instanceof PortalSession.PortalSessionException
+                    && PortalSession.PortalSessionException.Reason.NO_PORTAL_INFO
+                    == ((PortalSession.PortalSessionException) cause).getReason()) {
+                setResult(RESULT_NO_PORTAL_INFO);
             } else {
-                String missionId = getIntent().getStringExtra(EXTRA_MISSION_ID);
-                PortalItem missionItem = new PortalItem(portal, missionId);
-                try {
-                    JSONObject missionItemData = new JSONObject(new Scanner(missionItem.fetchDataAsync().get()).useDelimiter("\\A").next());
-                    JSONArray maps = missionItemData.getJSONArray("maps");
-                    String webMapId = maps.getString(0);
-
-                    PortalItem portalItem = new PortalItem(portal, webMapId);
-                    ArcGISMap map = new ArcGISMap(portalItem);
-                    mapView = findViewById(R.id.mapView);
-                    mapView.setMap(map);
-                    map.addDoneLoadingListener(new Runnable() {
-                        @Override
-                        public void run() {
-                            map.removeDoneLoadingListener(this);
-                            mapView.getGraphicsOverlays().add(streamGraphicsOverlay);
+                setResult(RESULT_NO_MISSION_SERVER_FOUND);
+            }
+            finish();
+            return;
+        }
+        Portal portal = session.getPortal();
+        String missionId = getIntent().getStringExtra(EXTRA_MISSION_ID);
+        PortalItem missionItem = new PortalItem(portal, missionId);
+        try {
+            JSONObject missionItemData = new JSONObject(new Scanner(missionItem.fetchDataAsync().get()).useDelimiter("\\A").next());
+            JSONArray maps = missionItemData.getJSONArray("maps");
+            String webMapId = maps.getString(0);
+
+            PortalItem portalItem = new PortalItem(portal, webMapId);
+            ArcGISMap map = new ArcGISMap(portalItem);
+            mapView = findViewById(R.id.mapView);
+            mapView.setMap(map);
+            map.addDoneLoadingListener(new Runnable() {
+                @Override
+                public void run() {
+                    map.removeDoneLoadingListener(this);
+                    MissionTileCache.CachedLayers cachedLayers = tileCache.useCachedLayers(missionId, map);
+                    List<String> uncachedLayerUrls = cachedLayers.getUncachedLayerUrls();
+                    mapView.getGraphicsOverlays().add(streamGraphicsOverlay);
+                    // Fall back to the online layers wherever the cached tiles do not reach
+                    mapView.addNavigationChangedListener(event -> {
+                        if (!event.isNavigating()) {
+                            cachedLayers.update(mapView.getVisibleArea(), mapView.getMapScale());
                         }
                     });
-
-                    StreamServiceListener.StreamServiceCallback callback = new StreamServiceListener.StreamServiceCallback() {
+                    mapView.addDrawStatusChangedListener(new DrawStatusChangedListener() {
                         @Override
-                        protected void rendererAvailable(Renderer renderer) {
-                            streamGraphicsOverlay.setRenderer(renderer);
+                        public void drawStatusChanged(DrawStatusChangedEvent event) {
+                            if (DrawStatus.COMPLETED == event.getDrawStatus()) {
+                                mapView.removeDrawStatusChangedListener(this);
+                                // The first view might be outside the cached tiles, e.g. in another orientation
+                                cachedLayers.update(mapView.getVisibleArea(), mapView.getMapScale());
+                                if (!uncachedLayerUrls.isEmpty()) {
+                                    // Cache tiles around the mission's area once it has been drawn
+                                    tileCache.prefetch(
+                                            missionId,
+                                            uncachedLayerUrls,
+                                            mapView.getVisibleArea(),
+                                            mapView.getMapScale(),
+                                            portal.getCredential()
+                                    );
+                                }
+                            }
                         }
+                    });
+                }
+            });
 
-                        @Override
-                        protected void newStreamFeature(Graphic newFeature) {
-                            streamGraphicsOverlay.getGraphics().add(newFeature);
-                        }
-                    };
-                    streamServiceListener = new StreamServiceListener(
-                            theMissionServerOptional.get().getString("url") + "/rest/services/" + missionId + "/tracks/StreamServer",
-                            ((OAuthTokenCredential) portal.getCredential()).getAccessToken(),
-                            callback
-                    );
-                    new Thread(() -> {
-                        try {
-                            streamServiceListener.start();
-                        } catch (IOException | URISyntaxException | JSONException e) {
-                            Log.e(TAG, "Could not connect to mission stream service: " + e.getLocalizedMessage(), e);
-                        }
-                    }).start();
-                } catch (JSONException | ExecutionException | InterruptedException e) {
-                    Log.e(TAG, "Could not get mission and web map: " + e.getLocalizedMessage(), e);
+            StreamServiceListener.StreamServiceCallback callback = new StreamServiceListener.StreamServiceCallback() {
+                @Override
+                protected void rendererAvailable(Renderer renderer) {
+                    streamGraphicsOverlay.setRenderer(renderer);
+                }
+
+                @Override
+                protected void newStreamFeature(Graphic newFeature) {
+                    streamGraphicsOverlay.getGraphics().add(newFeature);
                 }
-            }
-        });
 
-        portal.loadAsync();
+                @Override
+                protected void streamFeatureRemoved(Graphic removedFeature) {
+                    streamGraphicsOverlay.getGraphics().remove(removedFeature);
+                }
+            };
+            streamServiceListener = new StreamServiceListener(
+                    session.getMissionServerUrl() + "/rest/services/" + missionId + "/tracks/StreamServer",
+                    session.getTokenManager(),
+                    callback,
+                    rendererCache
+            );
+            streamServiceListener.setTrackTimeout(TRACK_TIMEOUT_MILLIS);
+            new Thread(() -> {
+                try {
+                    streamServiceListener.start();
+                } catch (IOException | URISyntaxException | JSONException e) {
+                    Log.e(TAG, "Could not connect to mission stream service: " + e.getLocalizedMessage(), e);
+                }
+            }).start();
+        } catch (JSONException | ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Could not get mission and web map: " + e.getLocalizedMessage(), e);
+        }
     }
 
     @Override
@@ -198,7 +247,12 @@ public class MissionActivity extends ArcGISOAuthActivity {
 
     @Override
     protected void onDestroy() {
-        streamServiceListener.close();
+        if (null != sessionFuture) {
+            sessionFuture.cancel(false);
+        }
+        if (null != streamServiceListener) {
+            streamServiceListener.close();
+        }
         if (null != mapView) {
             mapView.dispose();
         }
@@ -0,0 +1,395 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.Job;
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.data.TileCache;
+import com.esri.arcgisruntime.geometry.Geometry;
+import com.esri.arcgisruntime.geometry.GeometryEngine;
+import com.esri.arcgisruntime.layers.ArcGISTiledLayer;
+import com.esri.arcgisruntime.layers.Layer;
+import com.esri.arcgisruntime.mapping.ArcGISMap;
+import com.esri.arcgisruntime.mapping.Basemap;
+import com.esri.arcgisruntime.mapping.LayerList;
+import com.esri.arcgisruntime.security.Credential;
+import com.esri.arcgisruntime.tasks.tilecache.ExportTileCacheJob;
+import com.esri.arcgisruntime.tasks.tilecache.ExportTileCacheParameters;
+import com.esri.arcgisruntime.tasks.tilecache.ExportTileCacheTask;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.garysheppardjr.layers.Digests;
+
+/**
+ * A disk-backed, mission-scoped cache of tile packages for a mission web map's tiled layers. The
+ * first time a mission is opened, its tiled basemap and operational layers are exported around the
+ * visible area into tile packages. When the mission is opened again, a layer that reads each tile
+ * package is added next to the online layer, and only one of the two is visible at a time: the
+ * cached layer while the view is inside the package's area and scale range, and the online layer
+ * everywhere else.
+ * <p>
+ * Each mission's tile packages live in their own directory. Packages older than the maximum age
+ * are deleted and exported again. When the cache grows beyond its size cap, the directories of the
+ * least recently opened missions are deleted first.
+ */
+class MissionTileCache {
+
+    private static final String TAG = MissionTileCache.class.getSimpleName();
+
+    private static final String TILE_PACKAGE_EXTENSION = ".tpk";
+    private static final String COVERAGE_EXTENSION = ".json";
+    private static final String PARTIAL_EXTENSION = ".partial";
+
+    /**
+     * The default limit on the total size of all cached tile packages.
+     */
+    static final long DEFAULT_MAX_SIZE_BYTES = 512L * 1024 * 1024;
+
+    /**
+     * The default largest scale (i.e. most zoomed in) to export when prefetching tiles.
+     */
+    static final double DEFAULT_MAX_PREFETCH_SCALE = 4000;
+
+    /**
+     * The default age after which a tile package is exported again, so that changes to the
+     * online service eventually reach the cache.
+     */
+    static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The tiled layers of one opened mission map, with the area and scales that each cached layer
+     * covers.
+     */
+    static class CachedLayers {
+
+        private final List<CachedLayer> cachedLayers = new ArrayList<>();
+        private final List<String> uncachedLayerUrls = new ArrayList<>();
+
+        /**
+         * @return the service URLs of the tiled layers that are not cached, for passing to
+         * prefetch().
+         */
+        List<String> getUncachedLayerUrls() {
+            return Collections.unmodifiableList(uncachedLayerUrls);
+        }
+
+        /**
+         * Shows each cached layer if its tile package covers the view, and its online layer
+         * otherwise. Call this whenever the view stops changing.
+         *
+         * @param visibleArea the map view's visible area.
+         * @param mapScale    the map view's scale.
+         */
+        void update(Geometry visibleArea, double mapScale) {
+            for (CachedLayer cachedLayer : cachedLayers) {
+                boolean covered = null != visibleArea
+                        && mapScale <= cachedLayer.minScale
+                        && mapScale >= cachedLayer.maxScale
+                        && GeometryEngine.contains(cachedLayer.extent, visibleArea);
+                cachedLayer.cached.setVisible(cachedLayer.visible && covered);
+                cachedLayer.online.setVisible(cachedLayer.visible && !covered);
+            }
+        }
+
+    }
+
+    private static class CachedLayer {
+
+        private final Layer online;
+        private final ArcGISTiledLayer cached;
+        private final boolean visible;
+        private final Geometry extent;
+        private final double minScale;
+        private final double maxScale;
+
+        private CachedLayer(Layer online, ArcGISTiledLayer cached, Geometry extent, double minScale, double maxScale) {
+            this.online = online;
+            this.cached = cached;
+            this.visible = online.isVisible();
+            this.extent = extent;
+            this.minScale = minScale;
+            this.maxScale = maxScale;
+        }
+
+    }
+
+    private final File cacheDir;
+    private final long maxSizeBytes;
+    private final double maxPrefetchScale;
+    private final long maxAgeMillis;
+    private final Set<String> exportsInProgress = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /**
+     * @param cacheDir         the directory in which to store tile packages, e.g. a subdirectory of
+     *                         Context.getCacheDir().
+     * @param maxSizeBytes     the limit on the total size of all cached tile packages.
+     * @param maxPrefetchScale the largest scale to export when prefetching tiles.
+     * @param maxAgeMillis     how long a tile package is used before it is exported again.
+     */
+    MissionTileCache(File cacheDir, long maxSizeBytes, double maxPrefetchScale, long maxAgeMillis) {
+        this.cacheDir = cacheDir;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxPrefetchScale = maxPrefetchScale;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Adds a layer that reads the cached tile package next to each of a loaded map's tiled layers
+     * that has one, and counts a cache hit or miss for each tiled layer. Until the returned
+     * object's update() is called, the cached layers are shown and the online layers are hidden.
+     *
+     * @param missionId the mission ID.
+     * @param map       a loaded map.
+     * @return the map's cached and uncached tiled layers.
+     */
+    CachedLayers useCachedLayers(String missionId, ArcGISMap map) {
+        File missionDir = getMissionDir(missionId);
+        if (missionDir.isDirectory()) {
+            // Opening a mission makes it the most recently used
+            missionDir.setLastModified(System.currentTimeMillis());
+        }
+        CachedLayers cachedLayers = new CachedLayers();
+        Basemap basemap = map.getBasemap();
+        if (null != basemap) {
+            useCachedLayers(missionDir, basemap.getBaseLayers(), cachedLayers);
+            useCachedLayers(missionDir, basemap.getReferenceLayers(), cachedLayers);
+        }
+        useCachedLayers(missionDir, map.getOperationalLayers(), cachedLayers);
+        Log.i(TAG, String.format("Tile cache hit rate %.0f%% (%d hits, %d misses)",
+                100 * getHitRate(), getHitCount(), getMissCount()));
+        return cachedLayers;
+    }
+
+    private void useCachedLayers(File missionDir, LayerList layers, CachedLayers cachedLayers) {
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (layer instanceof ArcGISTiledLayer) {
+                String url = ((ArcGISTiledLayer) layer).getUri();
+                if (null == url || url.isEmpty()) {
+                    continue;
+                }
+                File tilePackage = getTilePackage(missionDir, url);
+                File coverageFile = getCoverageFile(tilePackage);
+                JSONObject coverage = tilePackage.isFile() ? readCoverage(coverageFile) : null;
+                if (null != coverage && System.currentTimeMillis() - tilePackage.lastModified() > maxAgeMillis) {
+                    Log.d(TAG, "Expiring cached tiles in " + tilePackage);
+                    coverage = null;
+                }
+                if (null != coverage) {
+                    hitCount.incrementAndGet();
+                    ArcGISTiledLayer cachedLayer = new ArcGISTiledLayer(new TileCache(tilePackage.getAbsolutePath()));
+                    cachedLayer.setName(layer.getName());
+                    cachedLayer.setOpacity(layer.getOpacity());
+                    cachedLayers.cachedLayers.add(new CachedLayer(
+                            layer,
+                            cachedLayer,
+                            Geometry.fromJson(coverage.optString("extent")),
+                            coverage.optDouble("minScale"),
+                            coverage.optDouble("maxScale")
+                    ));
+                    cachedLayer.setVisible(layer.isVisible());
+                    layer.setVisible(false);
+                    // The online layer stays in the map for views outside the package
+                    layers.add(++i, cachedLayer);
+                } else {
+                    missCount.incrementAndGet();
+                    if (!exportsInProgress.contains(tilePackage.getAbsolutePath())) {
+                        tilePackage.delete();
+                        coverageFile.delete();
+                    }
+                    cachedLayers.uncachedLayerUrls.add(url);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports tile packages for the given tiled layers in the background. Layers whose export
+     * fails, e.g. because the service does not allow exporting tiles, are simply not cached.
+     *
+     * @param missionId  the mission ID.
+     * @param layerUrls  the service URLs of the tiled layers to export.
+     * @param area       the area to export, typically the mission's visible area.
+     * @param minScale   the smallest scale (i.e. most zoomed out) to export.
+     * @param credential the credential to use for the tiled services, or null.
+     */
+    void prefetch(String missionId, List<String> layerUrls, Geometry area, double minScale, Credential credential) {
+        File missionDir = getMissionDir(missionId);
+        if (!missionDir.isDirectory() && !missionDir.mkdirs()) {
+            Log.w(TAG, "Could not create tile cache directory " + missionDir);
+            return;
+        }
+        double maxScale = Math.min(minScale, maxPrefetchScale);
+        JSONObject coverage;
+        try {
+            coverage = new JSONObject()
+                    .put("extent", new JSONObject(area.getExtent().toJson()))
+                    .put("minScale", minScale)
+                    .put("maxScale", maxScale);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not describe tile export area: " + e.getLocalizedMessage(), e);
+            return;
+        }
+        for (String url : layerUrls) {
+            File tilePackage = getTilePackage(missionDir, url);
+            if (!exportsInProgress.add(tilePackage.getAbsolutePath())) {
+                continue;
+            }
+            ExportTileCacheTask task = new ExportTileCacheTask(url);
+            if (null != credential) {
+                task.setCredential(credential);
+            }
+            ListenableFuture<ExportTileCacheParameters> parametersFuture =
+                    task.createDefaultExportTileCacheParametersAsync(area, minScale, maxScale);
+            parametersFuture.addDoneListener(() -> {
+                File partialPackage = new File(missionDir, tilePackage.getName() + PARTIAL_EXTENSION);
+                try {
+                    ExportTileCacheJob job = task.exportTileCache(parametersFuture.get(), partialPackage.getAbsolutePath());
+                    job.addJobDoneListener(() -> {
+                        // The coverage goes in first, so that a package on disk always has one
+                        if (Job.Status.SUCCEEDED == job.getStatus()
+                                && writeCoverage(getCoverageFile(tilePackage), coverage)
+                                && partialPackage.renameTo(tilePackage)) {
+                            tilePackage.setLastModified(System.currentTimeMillis());
+                            Log.d(TAG, "Cached tiles for " + url + " in " + tilePackage);
+                            enforceSizeLimit(missionDir);
+                        } else {
+                            Log.w(TAG, "Could not cache tiles for " + url, job.getError());
+                            partialPackage.delete();
+                        }
+                        exportsInProgress.remove(tilePackage.getAbsolutePath());
+                    });
+                    job.start();
+                } catch (ExecutionException | InterruptedException e) {
+                    Log.w(TAG, "Could not prepare tile export for " + url + ": " + e.getLocalizedMessage(), e);
+                    exportsInProgress.remove(tilePackage.getAbsolutePath());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of tiled layers that have been read from the cache.
+     */
+    int getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of tiled layers that were not in the cache.
+     */
+    int getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the fraction of tiled layers that have been read from the cache, or 0 if no tiled
+     * layers have been opened.
+     */
+    double getHitRate() {
+        int hits = hitCount.get();
+        int total = hits + missCount.get();
+        return 0 == total ? 0 : (double) hits / total;
+    }
+
+    private synchronized void enforceSizeLimit(File currentMissionDir) {
+        File[] missionDirs = cacheDir.listFiles(File::isDirectory);
+        if (null == missionDirs) {
+            return;
+        }
+        long totalSize = 0;
+        for (File missionDir : missionDirs) {
+            totalSize += sizeOf(missionDir);
+        }
+        Arrays.sort(missionDirs, Comparator.comparingLong(File::lastModified));
+        for (File missionDir : missionDirs) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            if (!missionDir.equals(currentMissionDir)) {
+                long size = sizeOf(missionDir);
+                Log.d(TAG, "Evicting cached tiles in " + missionDir);
+                File[] files = missionDir.listFiles();
+                if (null != files) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                missionDir.delete();
+                totalSize -= size;
+            }
+        }
+    }
+
+    private static long sizeOf(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static JSONObject readCoverage(File coverageFile) {
+        if (!coverageFile.isFile()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(coverageFile)) {
+            return new JSONObject(new Scanner(in, "UTF-8").useDelimiter("\\A").next());
+        } catch (IOException | JSONException | RuntimeException e) {
+            Log.w(TAG, "Could not read tile package coverage " + coverageFile + ": " + e.getLocalizedMessage(), e);
+            return null;
+        }
+    }
+
+    private static boolean writeCoverage(File coverageFile, JSONObject coverage) {
+        try (OutputStream out = new FileOutputStream(coverageFile)) {
+            out.write(coverage.toString().getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write tile package coverage " + coverageFile + ": " + e.getLocalizedMessage(), e);
+            coverageFile.delete();
+            return false;
+        }
+    }
+
+    private File getMissionDir(String missionId) {
+        return new File(cacheDir, missionId);
+    }
+
+    private static File getTilePackage(File missionDir, String layerUrl) {
+        return new File(missionDir, Digests.sha1(layerUrl) + TILE_PACKAGE_EXTENSION);
+    }
+
+    private static File getCoverageFile(File tilePackage) {
+        String name = tilePackage.getName();
+        return new File(tilePackage.getParentFile(),
+                name.substring(0, name.length() - TILE_PACKAGE_EXTENSION.length()) + COVERAGE_EXTENSION);
+    }
+
+}
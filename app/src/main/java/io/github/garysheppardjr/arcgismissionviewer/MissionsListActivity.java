@@ -11,10 +11,6 @@ import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
 import com.esri.arcgisruntime.ArcGISRuntimeEnvironment;
-import com.esri.arcgisruntime.concurrent.ListenableFuture;
-import com.esri.arcgisruntime.portal.Portal;
-import com.esri.arcgisruntime.portal.PortalInfo;
-import com.esri.arcgisruntime.security.OAuthTokenCredential;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -23,10 +19,8 @@ import org.json.JSONObject;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
 
 public class MissionsListActivity extends ArcGISOAuthActivity {
 
@@ -66,7 +60,9 @@ public class MissionsListActivity extends ArcGISOAuthActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_missions_list);
 
-        if (null == savedInstanceState) {
+        // A recreated activity asks for the session again unless the list is already showing; a
+        // load that is still in flight is shared, so this costs no extra network calls.
+        if (!(getSupportFragmentManager().findFragmentById(R.id.sample_content_fragment) instanceof MissionsListFragment)) {
 
             String portalUrl = getIntent().getStringExtra(EXTRA_PORTAL_URL);
             try {
@@ -81,90 +77,65 @@ public class MissionsListActivity extends ArcGISOAuthActivity {
 
             ArcGISRuntimeEnvironment.setApiKey(BuildConfig.API_KEY);
 
-            Portal portal = new Portal(portalUrl);
-            portal.addDoneLoadingListener(() -> {
-                PortalInfo portalInfo = portal.getPortalInfo();
-
-                if (null == portalInfo) {
-                    Log.w(TAG, String.format("Could not get Portal info from %s.", portalUrlFinal));
-                    setResult(RESULT_NO_PORTAL_INFO);
+            PortalSession.obtain(portalUrl, getString(R.string.oauth_client_id)).handle((session, error) -> {
+                if (isFinishing() || isDestroyed()) {
+                    return null;
+                }
+                if (null != error) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    Log.w(TAG, cause.getLocalizedMessage(), cause);
+                    if (cause instanceof PortalSession.PortalSessionException
+                            && PortalSession.PortalSessionException.Reason.NO_PORTAL_INFO
+                            == ((PortalSession.PortalSessionException) cause).getReason()) {
+                        setResult(RESULT_NO_PORTAL_INFO);
+                    } else {
+                        setResult(RESULT_NO_MISSION_SERVER_FOUND);
+                    }
                     finish();
-                    return;
-                } else {
-                    String serversUrl = portal.getSharingUrl() + "/portals/" + portalInfo.getOrganizationId() + "/servers?f=json";
-                    Log.d(TAG, "Servers URL: " + serversUrl);
-                    ListenableFuture<String> serversFuture = portal.sendRequestAsync(serversUrl);
-                    serversFuture.addDoneListener(() -> {
-                        JSONArray servers = null;
-                        try {
-                            String serversResponse = serversFuture.get();
-                            JSONObject serversResponseObj = new JSONObject(serversResponse);
-                            servers = serversResponseObj.getJSONArray("servers");
-                        } catch (ExecutionException | InterruptedException | JSONException e) {
-                            Log.w(TAG, e);
-                        }
-                        if (null == servers) {
-                            servers = new JSONArray();
-                        }
-                        List<JSONObject> missionServers = new ArrayList<>();
-                        for (int i = 0; i < servers.length(); i++) {
-                            try {
-                                JSONObject server = servers.getJSONObject(i);
-                                if ("ARCGIS_MISSION_SERVER".equals(server.optString("serverType"))) {
-                                    missionServers.add(server);
-                                }
-                            } catch (JSONException e) {
-                                Log.w(TAG, e);
-                            }
-                        }
-                        Optional<JSONObject> theMissionServerOptional = missionServers.parallelStream()
-                                .filter(missionServer -> "MissionServer".equals(missionServer.optString("serverFunction")))
-                                .findFirst();
-                        if (!theMissionServerOptional.isPresent()) {
-                            setResult(RESULT_NO_MISSION_SERVER_FOUND);
-                            finish();
-                            return;
-                        } else {
-                            // Ask Mission Server for the missions
-                            String missionsUrl = theMissionServerOptional.get().optString("url") + "/rest/missions?f=json";
-                            RequestQueue requestQueue = Volley.newRequestQueue(this);
-                            StringRequest req = new StringRequest(Request.Method.GET, missionsUrl, responseStr -> {
-                                try {
-                                    JSONObject response = new JSONObject(responseStr);
-                                    Log.d(TAG, responseStr);
-                                    JSONArray missions = response.getJSONArray("results");
-                                    ArrayList<String> missionIds = new ArrayList<>();
-                                    for (int i = 0; i < missions.length(); i++) {
-                                        missionIds.add(missions.getJSONObject(i).getString("id"));
-                                    }
-
-                                    // Put the missions in the list
-                                    // TODO perhaps save the list
-                                    FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
-                                    MissionsListFragment fragment = MissionsListFragment.newInstance(portalUrlFinal, missionIds);
-                                    transaction.replace(R.id.sample_content_fragment, fragment);
-                                    transaction.commit();
-                                } catch (JSONException e) {
-                                    Log.e(TAG, e.getLocalizedMessage(), e);
-                                }
-
-                            }, error -> {
-                                Log.e(TAG, error.getLocalizedMessage(), error);
-                            }) {
-                                @Override
-                                public Map<String, String> getHeaders() throws AuthFailureError {
-                                    HashMap<String, String> headers = new HashMap<>(super.getHeaders());
-                                    headers.put("Authorization", "Bearer " + ((OAuthTokenCredential) portal.getCredential()).getAccessToken());
-                                    return headers;
-                                }
-                            };
-                            requestQueue.add(req);
-                        }
-                    });
+                    return null;
                 }
+                // Ask Mission Server for the missions
+                String missionsUrl = session.getMissionServerUrl() + "/rest/missions?f=json";
+                RequestQueue requestQueue = Volley.newRequestQueue(this);
+                StringRequest req = new StringRequest(Request.Method.GET, missionsUrl, responseStr -> {
+                    if (isFinishing() || isDestroyed()) {
+                        return;
+                    }
+                    try {
+                        JSONObject response = new JSONObject(responseStr);
+                        Log.d(TAG, responseStr);
+                        JSONArray missions = response.getJSONArray("results");
+                        ArrayList<String> missionIds = new ArrayList<>();
+                        for (int i = 0; i < missions.length(); i++) {
+                            missionIds.add(missions.getJSONObject(i).getString("id"));
+                        }
 
+                        // Put the missions in the list
+                        // TODO perhaps save the list
+                        FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
+                        MissionsListFragment fragment = MissionsListFragment.newInstance(portalUrlFinal, missionIds);
+                        transaction.replace(R.id.sample_content_fragment, fragment);
+                        transaction.commit();
+                    } catch (JSONException e) {
+                        Log.e(TAG, e.getLocalizedMessage(), e);
+                    }
+
+                }, volleyError -> {
+                    Log.e(TAG, volleyError.getLocalizedMessage(), volleyError);
+                }) {
+                    @Override
+                    public Map<String, String> getHeaders() throws AuthFailureError {
+                        HashMap<String, String> headers = new HashMap<>(super.getHeaders());
+                        headers.put("Authorization", "Bearer " + session.getAccessToken());
+                        return headers;
+                    }
+                };
+                requestQueue.add(req);
+                return null;
+            }).exceptionally(e -> {
+                Log.e(TAG, "Could not list missions: " + e.getLocalizedMessage(), e);
+                return null;
             });
-            portal.loadAsync();
         }
     }
 
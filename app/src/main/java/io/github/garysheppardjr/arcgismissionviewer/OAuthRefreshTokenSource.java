@@ -0,0 +1,65 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.github.garysheppardjr.layers.StreamServices;
+import io.github.garysheppardjr.layers.TokenManager;
+import okhttp3.FormBody;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Gets new access tokens from a Portal's OAuth 2.0 token endpoint using a refresh token.
+ */
+class OAuthRefreshTokenSource implements TokenManager.TokenSource {
+
+    private final String tokenUrl;
+    private final String clientId;
+    private final String refreshToken;
+
+    /**
+     * @param sharingUrl   the Portal's sharing URL, i.e. Portal.getSharingUrl().
+     * @param clientId     the app's OAuth client ID.
+     * @param refreshToken the refresh token from the user's OAuth login.
+     */
+    OAuthRefreshTokenSource(String sharingUrl, String clientId, String refreshToken) {
+        this.tokenUrl = sharingUrl + "/oauth2/token";
+        this.clientId = clientId;
+        this.refreshToken = refreshToken;
+    }
+
+    @Override
+    public TokenManager.Token fetchToken() throws IOException {
+        Request request = new Request.Builder()
+                .url(tokenUrl)
+                .post(new FormBody.Builder()
+                        .add("client_id", clientId)
+                        .add("grant_type", "refresh_token")
+                        .add("refresh_token", refreshToken)
+                        .add("f", "json")
+                        .build())
+                .build();
+        try (Response response = StreamServices.SHARED_CLIENT.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || null == body) {
+                throw new IOException("Token request failed with HTTP " + response.code());
+            }
+            JSONObject obj = new JSONObject(body.string());
+            if (obj.has("error")) {
+                throw new IOException("Token request failed: " + obj.getJSONObject("error").optString("message"));
+            }
+            return new TokenManager.Token(
+                    obj.getString("access_token"),
+                    System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(obj.getLong("expires_in"))
+            );
+        } catch (JSONException e) {
+            throw new IOException("Token response was not valid JSON", e);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import android.util.Log;
+
+import com.esri.arcgisruntime.concurrent.ListenableFuture;
+import com.esri.arcgisruntime.portal.Portal;
+import com.esri.arcgisruntime.portal.PortalInfo;
+import com.esri.arcgisruntime.security.OAuthTokenCredential;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import io.github.garysheppardjr.layers.TokenManager;
+
+/**
+ * A loaded Portal, its Portal info and its Mission Server URL, shared by every activity in the
+ * process. The first request for a Portal URL loads the Portal and discovers its Mission Server;
+ * requests that arrive while that is in flight, e.g. from an activity recreated by a rotation,
+ * share the same load, and later requests get the loaded session without any network calls.
+ */
+class PortalSession {
+
+    private static final String TAG = PortalSession.class.getSimpleName();
+
+    private static final Map<String, CompletableFuture<PortalSession>> SESSIONS = new HashMap<>();
+
+    /**
+     * Why a session could not be established.
+     */
+    static class PortalSessionException extends Exception {
+
+        enum Reason {
+            NO_PORTAL_INFO,
+            NO_MISSION_SERVER_FOUND,
+            NOT_SIGNED_IN
+        }
+
+        private final Reason reason;
+
+        PortalSessionException(Reason reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+
+        PortalSessionException(Reason reason, String message, Throwable cause) {
+            super(message, cause);
+            this.reason = reason;
+        }
+
+        Reason getReason() {
+            return reason;
+        }
+
+    }
+
+    private final Portal portal;
+    private final PortalInfo portalInfo;
+    private final String missionServerUrl;
+    private final TokenManager tokenManager;
+
+    private PortalSession(Portal portal, PortalInfo portalInfo, String missionServerUrl, TokenManager tokenManager) {
+        this.portal = portal;
+        this.portalInfo = portalInfo;
+        this.missionServerUrl = missionServerUrl;
+        this.tokenManager = tokenManager;
+    }
+
+    /**
+     * Returns the session for a Portal URL, loading it if no load has succeeded or is in flight.
+     * A failed load is forgotten, so that the next request tries again.
+     *
+     * @param portalUrl the Portal URL, as returned by ArcGISOAuthActivity.setupOAuth.
+     * @param clientId  the app's OAuth client ID, used to refresh the login's access token.
+     * @return a future that completes with the session, or exceptionally with a
+     * PortalSessionException.
+     */
+    static synchronized CompletableFuture<PortalSession> obtain(String portalUrl, String clientId) {
+        String key = portalUrl.replaceAll("/+$", "");
+        CompletableFuture<PortalSession> session = SESSIONS.get(key);
+        if (null == session || session.isCompletedExceptionally()) {
+            CompletableFuture<PortalSession> newSession = new CompletableFuture<>();
+            newSession.whenComplete((loaded, error) -> {
+                if (null != error) {
+                    synchronized (PortalSession.class) {
+                        SESSIONS.remove(key, newSession);
+                    }
+                }
+            });
+            SESSIONS.put(key, newSession);
+            load(portalUrl, clientId, newSession);
+            session = newSession;
+        }
+        return session;
+    }
+
+    private static void load(String portalUrl, String clientId, CompletableFuture<PortalSession> session) {
+        Portal portal = new Portal(portalUrl);
+        portal.addDoneLoadingListener(() -> {
+            // Whatever goes wrong, the future must complete, or obtain() would hand it out forever
+            try {
+                PortalInfo portalInfo = portal.getPortalInfo();
+                if (null == portalInfo) {
+                    session.completeExceptionally(new PortalSessionException(
+                            PortalSessionException.Reason.NO_PORTAL_INFO,
+                            String.format("Could not get Portal info from %s.", portalUrl)
+                    ));
+                    return;
+                }
+                if (!(portal.getCredential() instanceof OAuthTokenCredential)) {
+                    session.completeExceptionally(new PortalSessionException(
+                            PortalSessionException.Reason.NOT_SIGNED_IN,
+                            String.format("Not signed in to %s with OAuth.", portalUrl)
+                    ));
+                    return;
+                }
+                String serversUrl = portal.getSharingUrl() + "/portals/" + portalInfo.getOrganizationId() + "/servers?f=json";
+                Log.d(TAG, "Servers URL: " + serversUrl);
+                ListenableFuture<String> serversFuture = portal.sendRequestAsync(serversUrl);
+                serversFuture.addDoneListener(() -> {
+                    try {
+                        JSONArray servers = null;
+                        try {
+                            servers = new JSONObject(serversFuture.get()).getJSONArray("servers");
+                        } catch (ExecutionException | InterruptedException | JSONException e) {
+                            Log.w(TAG, e);
+                        }
+                        String missionServerUrl = null == servers ? null : findMissionServerUrl(servers);
+                        if (null == missionServerUrl) {
+                            session.completeExceptionally(new PortalSessionException(
+                                    PortalSessionException.Reason.NO_MISSION_SERVER_FOUND,
+                                    String.format("Could not find a Mission Server in %s.", portalUrl)
+                            ));
+                        } else {
+                            session.complete(new PortalSession(portal, portalInfo, missionServerUrl, createTokenManager(portal, clientId)));
+                        }
+                    } catch (RuntimeException e) {
+                        completeWithError(session, portalUrl, e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                completeWithError(session, portalUrl, e);
+            }
+        });
+        portal.loadAsync();
+    }
+
+    private static void completeWithError(CompletableFuture<PortalSession> session, String portalUrl, RuntimeException e) {
+        session.completeExceptionally(new PortalSessionException(
+                PortalSessionException.Reason.NO_MISSION_SERVER_FOUND,
+                String.format("Could not set up a session for %s.", portalUrl),
+                e
+        ));
+    }
+
+    /**
+     * Creates a token manager for the login's access token. The credential does not say when the
+     * token expires, so the manager refreshes it straight away to learn the real expiry. The
+     * caller must have checked that the Portal's credential is an OAuthTokenCredential.
+     */
+    private static TokenManager createTokenManager(Portal portal, String clientId) {
+        OAuthTokenCredential credential = (OAuthTokenCredential) portal.getCredential();
+        return new TokenManager(
+                new OAuthRefreshTokenSource(
+                        portal.getSharingUrl(),
+                        clientId,
+                        credential.getRefreshToken()
+                ),
+                new TokenManager.Token(credential.getAccessToken(), System.currentTimeMillis()),
+                TokenManager.DEFAULT_REFRESH_MARGIN_MILLIS
+        );
+    }
+
+    private static String findMissionServerUrl(JSONArray servers) {
+        for (int i = 0; i < servers.length(); i++) {
+            JSONObject server = servers.optJSONObject(i);
+            if (null != server
+                    && "ARCGIS_MISSION_SERVER".equals(server.optString("serverType"))
+                    && "MissionServer".equals(server.optString("serverFunction"))) {
+                return server.optString("url");
+            }
+        }
+        return null;
+    }
+
+    Portal getPortal() {
+        return portal;
+    }
+
+    PortalInfo getPortalInfo() {
+        return portalInfo;
+    }
+
+    String getMissionServerUrl() {
+        return missionServerUrl;
+    }
+
+    /**
+     * @return the current access token for the logged-in user.
+     */
+    String getAccessToken() {
+        return tokenManager.getToken();
+    }
+
+    /**
+     * Returns the session's token manager, which is created when the session loads and keeps the
+     * login's access token fresh from then on. It lives as long as the process, so every activity
+     * and mission shares its refreshes.
+     *
+     * @return the token manager.
+     */
+    TokenManager getTokenManager() {
+        return tokenManager;
+    }
+
+}
@@ -0,0 +1,33 @@
+package io.github.garysheppardjr.layers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digests used to name and version cache entries.
+ */
+public final class Digests {
+
+    private Digests() {
+    }
+
+    /**
+     * @param s a string.
+     * @return the SHA-1 digest of the string's UTF-8 bytes, as 40 lowercase hex digits.
+     */
+    public static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.github.garysheppardjr.layers;
+
+import com.esri.arcgisruntime.mapping.view.Graphic;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of recycled graphics, so that tracks that appear after others have expired can
+ * reuse the expired tracks' graphics instead of allocating new ones.
+ * <p>
+ * A graphic must be removed from its graphics overlay before it is released to the pool.
+ */
+public class GraphicPool {
+
+    private final int capacity;
+    private final ArrayDeque<Graphic> graphics;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of graphics to keep for reuse. A capacity of 0 turns
+     *                 pooling off, so that every acquired graphic is newly allocated.
+     */
+    public GraphicPool(int capacity) {
+        this.capacity = capacity;
+        this.graphics = new ArrayDeque<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * @return a recycled graphic with no geometry, symbol or attributes, or a new graphic if the
+     * pool is empty.
+     */
+    public Graphic acquire() {
+        Graphic graphic;
+        synchronized (graphics) {
+            graphic = graphics.poll();
+        }
+        if (null == graphic) {
+            missCount.incrementAndGet();
+            graphic = new Graphic();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return graphic;
+    }
+
+    /**
+     * Resets a graphic and keeps it for reuse, unless the pool is full.
+     *
+     * @param graphic a graphic that no longer belongs to a graphics overlay.
+     */
+    public void release(Graphic graphic) {
+        synchronized (graphics) {
+            if (graphics.size() >= capacity) {
+                return;
+            }
+        }
+        graphic.getAttributes().clear();
+        graphic.setGeometry(null);
+        graphic.setSymbol(null);
+        graphic.setVisible(true);
+        graphic.setSelected(false);
+        graphic.setZIndex(0);
+        synchronized (graphics) {
+            if (graphics.size() < capacity) {
+                graphics.push(graphic);
+            }
+        }
+    }
+
+    /**
+     * @return the number of acquired graphics that were recycled.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of acquired graphics that had to be newly allocated.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of graphics currently available for reuse.
+     */
+    public int size() {
+        synchronized (graphics) {
+            return graphics.size();
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+package io.github.garysheppardjr.layers;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Monitors the track streams of any number of missions at once, without a map and without Android.
+ * Every mission shares one OkHttpClient, and the monitor creates no threads of its own. Descriptor
+ * requests are asynchronous. OkHttp reads each WebSocket with blocking I/O, though, so every open
+ * stream holds one of the client's pooled dispatcher threads for as long as it is open.
+ * <p>
+ * For each mission, the monitor counts messages, bytes and distinct tracks, from which it reports
+ * throughput.
+ */
+public class MissionMonitor implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(MissionMonitor.class.getName());
+
+    /**
+     * The lifecycle of one monitored mission stream.
+     */
+    public enum State {
+        /**
+         * Reading the stream service descriptor or opening the WebSocket.
+         */
+        CONNECTING,
+        /**
+         * Receiving messages.
+         */
+        OPEN,
+        /**
+         * Stopped normally, by the client or the server.
+         */
+        CLOSED,
+        /**
+         * Stopped because of an error.
+         */
+        FAILED
+    }
+
+    /**
+     * Statistics for one monitored mission stream.
+     */
+    public static class MissionStats {
+
+        private final String missionId;
+        private final AtomicLong messageCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final Set<String> trackIds = ConcurrentHashMap.newKeySet();
+
+        private volatile State state = State.CONNECTING;
+        private volatile long openedAtNanos;
+        private volatile long stoppedAtNanos;
+
+        private MissionStats(String missionId) {
+            this.missionId = missionId;
+        }
+
+        public String getMissionId() {
+            return missionId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getMessageCount() {
+            return messageCount.get();
+        }
+
+        /**
+         * @return the total size of the messages received, in bytes, counting text messages in
+         * UTF-8.
+         */
+        public long getByteCount() {
+            return byteCount.get();
+        }
+
+        /**
+         * @return the number of distinct track IDs received, or 0 if the stream service has no
+         * track ID field.
+         */
+        public int getTrackCount() {
+            return trackIds.size();
+        }
+
+        /**
+         * @return the average number of messages per second since the WebSocket opened, or 0 if it
+         * has not opened.
+         */
+        public double getMessagesPerSecond() {
+            long openedAt = openedAtNanos;
+            if (0 == openedAt) {
+                return 0;
+            }
+            long end = State.OPEN == state ? System.nanoTime() : stoppedAtNanos;
+            long elapsedNanos = end - openedAt;
+            return 0 >= elapsedNanos ? 0 : messageCount.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d messages (%.1f/s), %d bytes, %d tracks",
+                    missionId, state, getMessageCount(), getMessagesPerSecond(), getByteCount(), getTrackCount());
+        }
+
+    }
+
+    private final OkHttpClient client;
+    private final Map<String, MissionStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a monitor that uses the same client as StreamServiceListener.
+     */
+    public MissionMonitor() {
+        this(StreamServices.SHARED_CLIENT);
+    }
+
+    /**
+     * Instantiates a monitor that uses the given client. The monitor does not shut the client
+     * down when it is closed.
+     *
+     * @param client the client to use for every mission stream.
+     */
+    public MissionMonitor(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Starts monitoring a mission's track stream. This method returns immediately; the stream
+     * service descriptor is read and the WebSocket is opened in the background.
+     *
+     * @param missionId        the mission ID, used to identify the mission's statistics.
+     * @param streamServiceUrl the URL of the mission's tracks stream service.
+     * @param token            a token for reading the stream service descriptor, or null.
+     * @throws IllegalStateException if the mission is already being monitored.
+     */
+    public void monitor(String missionId, String streamServiceUrl, String token) {
+        MissionStream stream = new MissionStream(missionId);
+        if (null != streams.putIfAbsent(missionId, stream)) {
+            throw new IllegalStateException("Mission " + missionId + " is already being monitored");
+        }
+        stream.descriptorCall = client.newCall(StreamServices.createDescriptorRequest(streamServiceUrl, token));
+        stream.descriptorCall.enqueue(stream);
+    }
+
+    /**
+     * Stops monitoring a mission. Its final statistics are no longer reported.
+     *
+     * @param missionId the mission ID.
+     */
+    public void stop(String missionId) {
+        MissionStream stream = streams.remove(missionId);
+        if (null != stream) {
+            stream.stop();
+        }
+    }
+
+    /**
+     * @param missionId the mission ID.
+     * @return the mission's statistics, or null if the mission is not being monitored.
+     */
+    public MissionStats getStats(String missionId) {
+        MissionStream stream = streams.get(missionId);
+        return null == stream ? null : stream.stats;
+    }
+
+    /**
+     * @return the statistics of every monitored mission, keyed by mission ID.
+     */
+    public Map<String, MissionStats> getStats() {
+        Map<String, MissionStats> stats = new ConcurrentHashMap<>();
+        streams.forEach((missionId, stream) -> stats.put(missionId, stream.stats));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @return the combined message rate of every monitored mission.
+     */
+    public double getMessagesPerSecond() {
+        double total = 0;
+        for (MissionStream stream : streams.values()) {
+            total += stream.stats.getMessagesPerSecond();
+        }
+        return total;
+    }
+
+    /**
+     * Stops monitoring every mission.
+     */
+    @Override
+    public void close() {
+        for (String missionId : streams.keySet()) {
+            stop(missionId);
+        }
+    }
+
+    private class MissionStream extends WebSocketListener implements Callback {
+
+        private final MissionStats stats;
+
+        private volatile Call descriptorCall;
+        private volatile WebSocket webSocket;
+        private volatile boolean stopped = false;
+        private String trackIdFieldName;
+
+        private MissionStream(String missionId) {
+            this.stats = new MissionStats(missionId);
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) {
+            try (ResponseBody body = response.body()) {
+                if (!response.isSuccessful() || null == body) {
+                    throw new IOException("Stream service descriptor request failed with HTTP " + response.code());
+                }
+                JSONObject descriptor = new JSONObject(body.string());
+                trackIdFieldName = StreamServices.readTimeInfoField(descriptor, "trackIdField");
+                JSONObject webSocketConnectionInfo = StreamServices.readWebSocketConnectionInfo(descriptor);
+                synchronized (this) {
+                    if (!stopped) {
+                        webSocket = client.newWebSocket(StreamServices.createSubscribeRequest(webSocketConnectionInfo), this);
+                    }
+                }
+            } catch (IOException | JSONException e) {
+                // stop() cancels the call, which makes reading the body throw
+                if (!stopped) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            if (!stopped) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onOpen(@NotNull WebSocket webSocket, @NotNull Response response) {
+            stats.openedAtNanos = System.nanoTime();
+            stats.state = State.OPEN;
+        }
+
+        @Override
+        public void onMessage(@NotNull WebSocket webSocket, @NotNull String text) {
+            stats.messageCount.incrementAndGet();
+            stats.byteCount.addAndGet(text.getBytes(StandardCharsets.UTF_8).length);
+            if (null != trackIdFieldName) {
+                try {
+                    JSONObject attributes = new JSONObject(text).optJSONObject("attributes");
+                    if (null != attributes && attributes.has(trackIdFieldName)) {
+                        stats.trackIds.add(attributes.get(trackIdFieldName).toString());
+                    }
+                } catch (JSONException e) {
+                    LOGGER.log(Level.FINE, "Unreadable message from mission " + stats.missionId, e);
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(@NotNull WebSocket webSocket, @NotNull ByteString bytes) {
+            stats.messageCount.incrementAndGet();
+            stats.byteCount.addAndGet(bytes.size());
+        }
+
+        @Override
+        public void onClosing(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+            webSocket.close(1000, null);
+        }
+
+        @Override
+        public void onClosed(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+            stopped(State.CLOSED);
+        }
+
+        @Override
+        public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, @Nullable Response response) {
+            if (!stopped) {
+                fail(t);
+            }
+        }
+
+        private void fail(Throwable t) {
+            LOGGER.log(Level.WARNING, "Mission " + stats.missionId + " stream failed: " + t.getLocalizedMessage(), t);
+            stopped(State.FAILED);
+        }
+
+        private void stopped(State state) {
+            if (State.OPEN == stats.state) {
+                stats.stoppedAtNanos = System.nanoTime();
+            }
+            stats.state = state;
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            if (null != webSocket) {
+                webSocket.close(1000, "Monitor stopped");
+            } else if (null != descriptorCall) {
+                descriptorCall.cancel();
+            }
+            stopped(State.CLOSED);
+        }
+
+    }
+
+}
@@ -0,0 +1,218 @@
+package io.github.garysheppardjr.layers;
+
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.esri.arcgisruntime.symbology.Renderer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Caches stream service renderers, with their picture marker symbol images resolved, in memory and
+ * on disk. Entries are keyed by stream service URL and versioned by a digest of the renderer JSON
+ * in the stream service's descriptor, so a changed descriptor invalidates the cached entry.
+ * <p>
+ * The cache holds renderer JSON rather than Renderer objects, because a Renderer can belong to only
+ * one graphics overlay at a time. Parsing resolved JSON is cheap; fetching symbol images is not.
+ */
+public class RendererCache {
+
+    private static final String TAG = RendererCache.class.getSimpleName();
+
+    private static final int MEMORY_CACHE_SIZE = 16;
+    private static final String PICTURE_MARKER_SYMBOL_TYPE = "esriPMS";
+
+    private static class Entry {
+
+        private final String version;
+        private final String rendererJson;
+
+        private Entry(String version, String rendererJson) {
+            this.version = version;
+            this.rendererJson = rendererJson;
+        }
+
+    }
+
+    private final File cacheDir;
+    private final LruCache<String, Entry> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    /**
+     * Instantiates a new renderer cache.
+     *
+     * @param cacheDir the directory in which to store cached renderers, e.g. a subdirectory of
+     *                 Context.getCacheDir(). It is created if it does not exist.
+     */
+    public RendererCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns a digest of a stream service's renderer JSON, suitable for telling whether a renderer
+     * has changed.
+     *
+     * @param rendererJson the renderer JSON from the stream service's descriptor.
+     * @return a version string for the renderer.
+     */
+    public static String getVersion(JSONObject rendererJson) {
+        return Digests.sha1(rendererJson.toString());
+    }
+
+    /**
+     * Returns the renderer for a stream service, from the memory cache, the disk cache, or by
+     * resolving the given renderer JSON's picture marker symbol images and caching the result. A
+     * renderer whose images could not all be fetched is returned but not cached, so that a later
+     * call fetches the missing images again.
+     *
+     * @param streamServiceUrl the stream service URL.
+     * @param rendererJson     the renderer JSON from the stream service's descriptor.
+     * @param token            a token for fetching symbol images, or null.
+     * @return the renderer.
+     */
+    public Renderer getRenderer(String streamServiceUrl, JSONObject rendererJson, String token) {
+        String version = getVersion(rendererJson);
+        Entry entry;
+        synchronized (memoryCache) {
+            entry = memoryCache.get(streamServiceUrl);
+        }
+        if (null == entry || !version.equals(entry.version)) {
+            entry = readFromDisk(streamServiceUrl);
+            if (null == entry || !version.equals(entry.version)) {
+                Log.d(TAG, "Resolving renderer for " + streamServiceUrl);
+                try {
+                    JSONObject resolved = new JSONObject(rendererJson.toString());
+                    boolean complete = resolvePictureMarkerSymbols(resolved, streamServiceUrl, token);
+                    if (!complete) {
+                        // Not cached, so that the next session tries the missing images again
+                        return Renderer.fromJson(resolved.toString());
+                    }
+                    entry = new Entry(version, resolved.toString());
+                    writeToDisk(streamServiceUrl, entry);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Could not resolve renderer symbols: " + e.getLocalizedMessage(), e);
+                    return Renderer.fromJson(rendererJson.toString());
+                }
+            }
+            synchronized (memoryCache) {
+                memoryCache.put(streamServiceUrl, entry);
+            }
+        }
+        return Renderer.fromJson(entry.rendererJson);
+    }
+
+    /**
+     * Replaces picture marker symbol image URLs with inline image data.
+     *
+     * @return true if every image was resolved, or false if any could not be fetched.
+     */
+    private boolean resolvePictureMarkerSymbols(Object json, String streamServiceUrl, String token) throws JSONException {
+        boolean complete = true;
+        if (json instanceof JSONObject) {
+            JSONObject obj = (JSONObject) json;
+            if (PICTURE_MARKER_SYMBOL_TYPE.equals(obj.optString("type"))
+                    && obj.has("url") && !obj.has("imageData")) {
+                complete = resolvePictureMarkerSymbol(obj, streamServiceUrl, token);
+            }
+            JSONArray names = obj.names();
+            if (null != names) {
+                for (int i = 0; i < names.length(); i++) {
+                    complete &= resolvePictureMarkerSymbols(obj.get(names.getString(i)), streamServiceUrl, token);
+                }
+            }
+        } else if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            for (int i = 0; i < array.length(); i++) {
+                complete &= resolvePictureMarkerSymbols(array.get(i), streamServiceUrl, token);
+            }
+        }
+        return complete;
+    }
+
+    private boolean resolvePictureMarkerSymbol(JSONObject symbol, String streamServiceUrl, String token) throws JSONException {
+        String url = symbol.getString("url");
+        if (url.startsWith("data:")) {
+            return true;
+        } else if (!url.contains("://")) {
+            // Relative symbol URLs are relative to the service's images resource
+            url = streamServiceUrl + "/images/" + url;
+        }
+        Request.Builder builder = new Request.Builder().url(url);
+        if (null != token) {
+            builder.addHeader("Authorization", "Bearer " + token);
+        }
+        try (Response response = StreamServices.SHARED_CLIENT.newCall(builder.build()).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || null == body) {
+                Log.w(TAG, String.format("Could not fetch symbol image %s: HTTP %d", url, response.code()));
+                return false;
+            }
+            if (!symbol.has("contentType") && null != body.contentType()) {
+                symbol.put("contentType", body.contentType().type() + "/" + body.contentType().subtype());
+            }
+            symbol.put("imageData", Base64.encodeToString(body.bytes(), Base64.NO_WRAP));
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not fetch symbol image " + url + ": " + e.getLocalizedMessage(), e);
+            return false;
+        }
+    }
+
+    private File getCacheFile(String streamServiceUrl) {
+        return new File(cacheDir, Digests.sha1(streamServiceUrl) + ".json");
+    }
+
+    private Entry readFromDisk(String streamServiceUrl) {
+        File file = getCacheFile(streamServiceUrl);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            JSONObject obj = new JSONObject(new Scanner(in, "UTF-8").useDelimiter("\\A").next());
+            return new Entry(obj.getString("version"), obj.getJSONObject("renderer").toString());
+        } catch (IOException | JSONException | RuntimeException e) {
+            Log.w(TAG, "Could not read cached renderer " + file + ": " + e.getLocalizedMessage(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String streamServiceUrl, Entry entry) {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.w(TAG, "Could not create renderer cache directory " + cacheDir);
+            return;
+        }
+        File file = getCacheFile(streamServiceUrl);
+        File tempFile = new File(cacheDir, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            JSONObject obj = new JSONObject()
+                    .put("version", entry.version)
+                    .put("renderer", new JSONObject(entry.rendererJson));
+            out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Could not write cached renderer " + file + ": " + e.getLocalizedMessage(), e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.w(TAG, "Could not move cached renderer into place at " + file);
+            tempFile.delete();
+        }
+    }
+
+}
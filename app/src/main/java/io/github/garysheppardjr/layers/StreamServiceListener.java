@@ -17,15 +17,18 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
 
@@ -57,20 +60,74 @@ public class StreamServiceListener extends WebSocketListener {
          */
         protected abstract void newStreamFeature(Graphic newFeature);
 
+        /**
+         * Handles the removal of a stream feature whose track has expired. The
+         * client must remove the graphic from its graphics overlay before this
+         * method returns, because the listener then recycles the graphic.
+         * Expired tracks are removed on a background thread.
+         *
+         * @param removedFeature a graphic previously passed to newStreamFeature.
+         * @see #setTrackTimeout(long)
+         */
+        protected abstract void streamFeatureRemoved(Graphic removedFeature);
+
     }
 
+    /**
+     * The default number of expired tracks' graphics kept for reuse.
+     */
+    public static final int DEFAULT_GRAPHIC_POOL_CAPACITY = 256;
+
+    private static final long EXPIRY_SWEEP_INTERVAL_MILLIS = 1000;
+    private static final long INITIAL_RECONNECT_DELAY_MILLIS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+    private static final int CLOSE_CODE_POLICY_VIOLATION = 1008;
+
     private final String streamServiceUrl;
     private final StreamServiceCallback streamServiceCallback;
-    private final Map<String, Graphic> trackIdToGraphic = new HashMap<>();
-    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private final RendererCache rendererCache;
+    private final TokenManager tokenManager;
+    private final Map<String, Track> trackIdToTrack = new HashMap<>();
+    private final AtomicLong outOfOrderDropCount = new AtomicLong();
+    private final AtomicLong staleDropCount = new AtomicLong();
+    private final Object connectionLock = new Object();
 
     private String trackIdFieldName;
+    private String startTimeFieldName;
+    private volatile long maxUpdateAgeMillis = 0;
+    private volatile long trackTimeoutMillis = 0;
+    private volatile GraphicPool graphicPool = new GraphicPool(DEFAULT_GRAPHIC_POOL_CAPACITY);
+    private ScheduledFuture<?> expirySweep;
+    private volatile boolean closed = false;
+    private int generation = 0;
+    private long reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLIS;
     private String token = null;
+    private String rendererVersion;
+    private TrackAttributeStore attributeStore;
+    private String attributeFieldSchema;
+    private Renderer renderer;
     private JSONObject webSocketConnectionInfo;
     private JSONObject spatialReference;
-    private WebSocket webSocket;
+    private volatile WebSocket webSocket;
     private StringBuilder multiTextBuffer;
 
+    /**
+     * The state of one track that this listener has seen.
+     */
+    private static class Track {
+
+        private final String trackId;
+        private Graphic graphic;
+        private int slot = -1;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private long lastUpdateMillis;
+
+        private Track(String trackId) {
+            this.trackId = trackId;
+        }
+
+    }
+
     /**
      * Instantiates but does not start a new stream service listener. After
      * calling the constructor, call start() to start it.
@@ -84,14 +141,59 @@ public class StreamServiceListener extends WebSocketListener {
      * @see #start()
      */
     public StreamServiceListener(String streamServiceUrl, String token, StreamServiceCallback streamServiceCallback) {
+        this(streamServiceUrl, token, streamServiceCallback, null);
+    }
+
+    /**
+     * Instantiates but does not start a new stream service listener that caches
+     * the stream service's renderer. After calling the constructor, call start()
+     * to start it.
+     *
+     * @param streamServiceUrl      the stream service URL.
+     * @param streamServiceCallback a callback object, or null.
+     * @param rendererCache         a cache for the stream service's renderer, or
+     *                              null to parse the renderer on every start.
+     * @see #StreamServiceListener(String, String, StreamServiceCallback)
+     */
+    public StreamServiceListener(String streamServiceUrl, String token, StreamServiceCallback streamServiceCallback, RendererCache rendererCache) {
+        this(streamServiceUrl, token, null, streamServiceCallback, rendererCache);
+    }
+
+    /**
+     * Instantiates but does not start a new stream service listener whose token
+     * is kept fresh by a token manager. If the WebSocket fails or the server
+     * closes it, the listener reconnects with the manager's current token,
+     * without reading the descriptor or renderer again. After calling the
+     * constructor, call start() to start it.
+     *
+     * @param streamServiceUrl      the stream service URL.
+     * @param tokenManager          the token manager.
+     * @param streamServiceCallback a callback object, or null.
+     * @param rendererCache         a cache for the stream service's renderer, or
+     *                              null to parse the renderer on every start.
+     */
+    public StreamServiceListener(String streamServiceUrl, TokenManager tokenManager, StreamServiceCallback streamServiceCallback, RendererCache rendererCache) {
+        this(streamServiceUrl, null, tokenManager, streamServiceCallback, rendererCache);
+    }
+
+    private StreamServiceListener(String streamServiceUrl, String token, TokenManager tokenManager, StreamServiceCallback streamServiceCallback, RendererCache rendererCache) {
         this.streamServiceUrl = streamServiceUrl;
         this.token = token;
+        this.tokenManager = tokenManager;
         this.streamServiceCallback = streamServiceCallback;
+        this.rendererCache = rendererCache;
     }
 
     /**
      * Tells the listener to read the stream service's JSON descriptor and connect
-     * to the stream service via WebSocket.
+     * to the stream service via WebSocket. If the stream service rejects the
+     * token and there is a token manager, the listener refreshes the token and
+     * tries once more.
+     * <p>
+     * A closed listener can be started again, and keeps its tracks and renderer
+     * unless the descriptor has changed. Starting a listener that is already
+     * connected replaces its WebSocket. If close() is called while this method
+     * is running, this start does not connect.
      *
      * @throws IOException        if the stream service cannot be read, either because it
      *                            is down or because the URL provided to the constructor is incorrect.
@@ -101,89 +203,216 @@ public class StreamServiceListener extends WebSocketListener {
      *                            return.
      */
     public void start() throws IOException, URISyntaxException, JSONException {
+        int generation;
+        synchronized (connectionLock) {
+            closed = false;
+            generation = ++this.generation;
+        }
         JSONObject streamServiceJsonDescriptor = readStreamServiceJsonDescriptor();
         spatialReference = streamServiceJsonDescriptor.optJSONObject("spatialReference");
-        trackIdFieldName = readTrackIdFieldName(streamServiceJsonDescriptor);
+        trackIdFieldName = StreamServices.readTimeInfoField(streamServiceJsonDescriptor, "trackIdField");
+        startTimeFieldName = StreamServices.readTimeInfoField(streamServiceJsonDescriptor, "startTimeField");
+        JSONArray fields = streamServiceJsonDescriptor.optJSONArray("fields");
+        String fieldSchema = null == fields ? null : fields.toString();
+        synchronized (trackIdToTrack) {
+            // Existing tracks keep their slots when the listener is restarted, unless the fields changed
+            if (!Objects.equals(fieldSchema, attributeFieldSchema)) {
+                attributeStore = TrackAttributeStore.fromDescriptor(streamServiceJsonDescriptor);
+                attributeFieldSchema = fieldSchema;
+                for (Track track : trackIdToTrack.values()) {
+                    track.slot = -1;
+                }
+            }
+            if (null != attributeStore) {
+                Set<String> materializedFields = TrackAttributeStore.findDrawingFields(streamServiceJsonDescriptor);
+                if (null != materializedFields) {
+                    if (null != trackIdFieldName) {
+                        materializedFields.add(trackIdFieldName);
+                    }
+                    if (null != startTimeFieldName) {
+                        materializedFields.add(startTimeFieldName);
+                    }
+                }
+                attributeStore.setMaterializedFields(materializedFields);
+            }
+        }
         if (null != streamServiceCallback) {
             Renderer renderer = readRenderer(streamServiceJsonDescriptor);
             if (null != renderer) {
                 streamServiceCallback.rendererAvailable(renderer);
             }
         }
-        webSocketConnectionInfo = readWebSocketConnectionInfo(streamServiceJsonDescriptor);
-        if (webSocketConnectionInfo.has("urls")) {
-            JSONArray urls = webSocketConnectionInfo.getJSONArray("urls");
-            if (0 < urls.length()) {
-                new Thread(() -> {
-                    try {
-                        OkHttpClient client = new OkHttpClient.Builder().build();
-                        Request.Builder builder = new Request.Builder().url(urls.optString(0) + "/subscribe");
-                        if (webSocketConnectionInfo.has("token")) {
-                            builder.addHeader("Authorization", "Bearer " + webSocketConnectionInfo.optString("token"));
-                        }
-                        this.webSocket = client.newWebSocket(builder.build(), this);
-                        stopLatch.await();
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(StreamServiceListener.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }).start();
-            } else {
-                throw new IOException("Stream service JSON descriptor's urls array is empty");
+        webSocketConnectionInfo = StreamServices.readWebSocketConnectionInfo(streamServiceJsonDescriptor);
+        connect(generation);
+        synchronized (trackIdToTrack) {
+            if (!closed && null == expirySweep) {
+                // Runs even when the stream is quiet, so that expired tracks still leave the map
+                expirySweep = StreamServices.SCHEDULER.scheduleWithFixedDelay(
+                        this::removeExpiredTracks,
+                        EXPIRY_SWEEP_INTERVAL_MILLIS,
+                        EXPIRY_SWEEP_INTERVAL_MILLIS,
+                        TimeUnit.MILLISECONDS
+                );
             }
-        } else {
-            throw new IOException("Stream service JSON descriptor does not contain urls");
         }
+    }
+
+    /**
+     * Opens the WebSocket, unless the listener has been closed or started again
+     * since the given start. This is also the token-only reconnect path: it
+     * reuses the connection info from the descriptor and authenticates with the
+     * token in that info or, if there is none, with the token manager's current
+     * token.
+     *
+     * @param generation the start that this connection belongs to.
+     */
+    private void connect(int generation) throws IOException, JSONException {
+        String webSocketToken = null == tokenManager ? null : tokenManager.getToken();
+        Request request = StreamServices.createSubscribeRequest(webSocketConnectionInfo, webSocketToken);
+        synchronized (connectionLock) {
+            if (closed || generation != this.generation) {
+                return;
+            }
+            if (null != this.webSocket) {
+                // A restart replaces the open WebSocket; its remaining events are ignored
+                this.webSocket.close(1000, "OK");
+            }
+            // The WebSocket connects and reads on the shared client's threads
+            this.webSocket = StreamServices.SHARED_CLIENT.newWebSocket(request, this);
+        }
+    }
 
+    private String getToken() {
+        return null == tokenManager ? token : tokenManager.getToken();
     }
 
     private JSONObject readStreamServiceJsonDescriptor() throws IOException, JSONException {
-        OkHttpClient client = new OkHttpClient.Builder().build();
-        Request.Builder builder = new Request.Builder()
-                .url(streamServiceUrl + "?f=json");
-        if (null != token) {
-            builder.addHeader("Authorization", "Bearer " + token);
+        JSONObject descriptor = requestStreamServiceJsonDescriptor();
+        if (null == descriptor && null != tokenManager) {
+            // The token was revoked or expired before the manager refreshed it
+            Log.i(TAG, "Stream service rejected the token; refreshing it and retrying");
+            tokenManager.refresh();
+            descriptor = requestStreamServiceJsonDescriptor();
+        }
+        if (null == descriptor) {
+            throw new IOException("Stream service rejected the token: " + streamServiceUrl);
         }
-        Request request = builder.build();
-        Response response = client.newCall(request).execute();
-        return new JSONObject(response.body().string());
+        return descriptor;
     }
 
-    private static String readTrackIdFieldName(JSONObject streamServiceJsonDescriptor) throws JSONException {
-        String trackIdFieldName = null;
-        if (streamServiceJsonDescriptor.has("timeInfo")) {
-            JSONObject timeInfoObj = streamServiceJsonDescriptor.getJSONObject("timeInfo");
-            if (timeInfoObj.has("trackIdField")) {
-                trackIdFieldName = timeInfoObj.getString("trackIdField");
+    /**
+     * @return the descriptor, or null if the stream service rejected the token.
+     */
+    private JSONObject requestStreamServiceJsonDescriptor() throws IOException, JSONException {
+        Request request = StreamServices.createDescriptorRequest(streamServiceUrl, getToken());
+        try (Response response = StreamServices.SHARED_CLIENT.newCall(request).execute()) {
+            if (StreamServices.isTokenRejected(response.code())) {
+                return null;
+            }
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || null == body) {
+                throw new IOException("Stream service descriptor request failed with HTTP " + response.code());
             }
+            JSONObject descriptor = new JSONObject(body.string());
+            // ArcGIS Server reports token errors with HTTP 200 and an error body
+            JSONObject error = descriptor.optJSONObject("error");
+            if (null != error) {
+                if (StreamServices.isTokenRejected(error.optInt("code"))) {
+                    return null;
+                }
+                throw new IOException("Stream service descriptor request failed: " + error.optString("message"));
+            }
+            return descriptor;
         }
-        return trackIdFieldName;
     }
 
-    private static Renderer readRenderer(JSONObject streamServiceJsonDescriptor) throws JSONException {
+    /**
+     * Sets how old an update can be, according to its start time, before this
+     * listener discards it. Updates are compared to the device clock, so allow
+     * for clock skew between the device and the server.
+     *
+     * @param maxUpdateAgeMillis the maximum update age in milliseconds, or 0 to
+     *                           accept updates of any age. The default is 0.
+     */
+    public void setMaxUpdateAge(long maxUpdateAgeMillis) {
+        this.maxUpdateAgeMillis = maxUpdateAgeMillis;
+    }
+
+    /**
+     * Sets how long a track can go without updates before this listener removes
+     * its graphic and recycles it for new tracks.
+     *
+     * @param trackTimeoutMillis the track timeout in milliseconds, or 0 to keep
+     *                           tracks forever. The default is 0.
+     * @see StreamServiceCallback#streamFeatureRemoved(Graphic)
+     */
+    public void setTrackTimeout(long trackTimeoutMillis) {
+        this.trackTimeoutMillis = trackTimeoutMillis;
+    }
+
+    /**
+     * Sets the pool from which this listener takes graphics for new tracks and
+     * to which it returns the graphics of expired tracks. A pool can be shared by
+     * several listeners.
+     *
+     * @param graphicPool the graphic pool. Use a pool with capacity 0 to turn
+     *                    pooling off.
+     */
+    public void setGraphicPool(GraphicPool graphicPool) {
+        this.graphicPool = graphicPool;
+    }
+
+    /**
+     * @return the graphic pool, e.g. for reading its hit and miss counts.
+     */
+    public GraphicPool getGraphicPool() {
+        return graphicPool;
+    }
+
+    /**
+     * @return the number of updates discarded because they were older than the
+     * latest update already applied to the same track.
+     */
+    public long getOutOfOrderDropCount() {
+        return outOfOrderDropCount.get();
+    }
+
+    /**
+     * @return the number of updates discarded because they were older than the
+     * maximum update age.
+     * @see #setMaxUpdateAge(long)
+     */
+    public long getStaleDropCount() {
+        return staleDropCount.get();
+    }
+
+    private Renderer readRenderer(JSONObject streamServiceJsonDescriptor) throws JSONException {
         if (streamServiceJsonDescriptor.has("drawingInfo")) {
             JSONObject drawingInfo = streamServiceJsonDescriptor.getJSONObject("drawingInfo");
             if (drawingInfo.has("renderer")) {
-                return Renderer.fromJson(drawingInfo.getJSONObject("renderer").toString());
+                JSONObject rendererJson = drawingInfo.getJSONObject("renderer");
+                String version = RendererCache.getVersion(rendererJson);
+                // On restart, keep the renderer the client already has if it has not changed
+                if (null == renderer || !version.equals(rendererVersion)) {
+                    renderer = null == rendererCache
+                            ? Renderer.fromJson(rendererJson.toString())
+                            : rendererCache.getRenderer(streamServiceUrl, rendererJson, getToken());
+                    rendererVersion = version;
+                }
+                return renderer;
             }
         }
         return null;
     }
 
-    private static JSONObject readWebSocketConnectionInfo(JSONObject streamServiceJsonDescriptor) throws IOException, URISyntaxException, JSONException {
-        if (streamServiceJsonDescriptor.has("streamUrls")) {
-            JSONArray streamUrls = streamServiceJsonDescriptor.getJSONArray("streamUrls");
-            if (0 < streamUrls.length()) {
-                return streamUrls.getJSONObject(0);
-            } else {
-                throw new IOException("Stream service JSON descriptor's streamUrls array is empty");
-            }
-        } else {
-            throw new IOException("Stream service JSON descriptor does not contain streamUrls");
-        }
-    }
-
     @Override
     public void onMessage(@NotNull WebSocket webSocket, @NotNull String json) {
+        synchronized (connectionLock) {
+            if (webSocket != this.webSocket) {
+                // A replaced or closed WebSocket can still deliver messages that arrived before its close
+                return;
+            }
+        }
         Log.d(TAG, "onMessage: " + json);
         if (null != streamServiceCallback) {
             if (null != multiTextBuffer) {
@@ -192,14 +421,27 @@ public class StreamServiceListener extends WebSocketListener {
             }
             try {
                 JSONObject obj = new JSONObject(json);
-                createOrUpdateGraphic(
-                        obj.getJSONObject("geometry"),
-                        new Gson().fromJson(
-                                obj.getString("attributes"),
-                                new TypeToken<HashMap<String, Object>>() {
-                                }.getType()
-                        )
-                );
+                JSONObject attributes = obj.getJSONObject("attributes");
+                // Tracks are also removed by the expiry sweep, on another thread
+                synchronized (trackIdToTrack) {
+                    Track track = acceptUpdate(attributes);
+                    if (null != track) {
+                        Geometry geometry = readGeometry(obj.getJSONObject("geometry"));
+                        if (null == attributeStore) {
+                            createOrUpdateGraphic(
+                                    track,
+                                    geometry,
+                                    new Gson().fromJson(
+                                            attributes.toString(),
+                                            new TypeToken<HashMap<String, Object>>() {
+                                            }.getType()
+                                    )
+                            );
+                        } else {
+                            createOrUpdateGraphic(track, geometry, attributes);
+                        }
+                    }
+                }
             } catch (JSONException ex) {
                 Log.e(TAG, String.format("JSONException related to this string: %s", json), ex);
             }
@@ -227,57 +469,220 @@ public class StreamServiceListener extends WebSocketListener {
         }
     }
 
-    private void createOrUpdateGraphic(JSONObject geometry, Map<String, Object> attributes) throws JSONException {
+    /**
+     * Decides whether to apply an update, before any geometry or attribute work
+     * is done, and records the update's start time for its track.
+     *
+     * @param attributes the update's attributes.
+     * @return the update's track, or null if the update is out of order or
+     * stale and should be discarded.
+     */
+    private Track acceptUpdate(JSONObject attributes) {
+        long timestamp = Long.MIN_VALUE;
+        if (null != startTimeFieldName && attributes.has(startTimeFieldName)) {
+            timestamp = attributes.optLong(startTimeFieldName, Long.MIN_VALUE);
+        }
+        if (Long.MIN_VALUE != timestamp) {
+            long maxAge = maxUpdateAgeMillis;
+            if (0 < maxAge && System.currentTimeMillis() - timestamp > maxAge) {
+                staleDropCount.incrementAndGet();
+                return null;
+            }
+        }
+        Track track = null;
+        if (null != trackIdFieldName) {
+            Object trackIdObj = attributes.opt(trackIdFieldName);
+            if (null != trackIdObj && JSONObject.NULL != trackIdObj) {
+                String trackId = trackIdObj.toString();
+                track = trackIdToTrack.get(trackId);
+                if (null == track) {
+                    track = new Track(trackId);
+                    trackIdToTrack.put(trackId, track);
+                } else if (Long.MIN_VALUE != timestamp && timestamp < track.lastTimestamp) {
+                    outOfOrderDropCount.incrementAndGet();
+                    return null;
+                }
+            }
+        }
+        if (null == track) {
+            // Without a track ID, every update is a new feature
+            track = new Track(null);
+        }
+        if (Long.MIN_VALUE != timestamp) {
+            track.lastTimestamp = timestamp;
+        }
+        track.lastUpdateMillis = System.currentTimeMillis();
+        return track;
+    }
+
+    private Geometry readGeometry(JSONObject geometry) throws JSONException {
         if (!geometry.has("spatialReference")) {
             geometry.put("spatialReference", spatialReference);
         }
-        createOrUpdateGraphic(Geometry.fromJson(geometry.toString()), attributes);
+        return Geometry.fromJson(geometry.toString());
     }
 
-    private void createOrUpdateGraphic(Geometry geometry, Map<String, Object> attributes) {
-        Graphic graphic = null;
-        String trackId = null;
-        if (null != trackIdFieldName) {
-            Object trackIdObj = attributes.get(trackIdFieldName);
-            if (null != trackIdObj) {
-                trackId = trackIdObj.toString();
-                graphic = trackIdToGraphic.get(trackId);
-            }
+    private void createOrUpdateGraphic(Track track, Geometry geometry, Map<String, Object> attributes) {
+        boolean newGraphic = null == track.graphic;
+        if (newGraphic) {
+            track.graphic = graphicPool.acquire();
         }
-        boolean newGraphic = false;
-        if (null == graphic) {
-            graphic = new Graphic();
-            newGraphic = true;
-            if (null != trackId) {
-                trackIdToGraphic.put(trackId, graphic);
-            }
+        track.graphic.getAttributes().putAll(attributes);
+        updateGraphic(track.graphic, geometry, newGraphic);
+    }
+
+    /**
+     * Decodes the attributes into the track's columns and materializes only the
+     * fields that drawing needs into the graphic.
+     */
+    private void createOrUpdateGraphic(Track track, Geometry geometry, JSONObject attributes) {
+        boolean newGraphic = null == track.graphic;
+        if (newGraphic) {
+            track.graphic = graphicPool.acquire();
+        }
+        if (-1 == track.slot) {
+            track.slot = attributeStore.allocateSlot();
         }
-        graphic.getAttributes().putAll(attributes);
+        attributeStore.write(track.slot, attributes);
+        attributeStore.materialize(track.slot, track.graphic.getAttributes());
+        if (null == track.trackId) {
+            // Nothing will update this feature again, so its slot is not needed
+            attributeStore.releaseSlot(track.slot);
+            track.slot = -1;
+        }
+        updateGraphic(track.graphic, geometry, newGraphic);
+    }
+
+    private void updateGraphic(Graphic graphic, Geometry geometry, boolean newGraphic) {
         graphic.setGeometry(geometry);
         if (newGraphic) {
             streamServiceCallback.newStreamFeature(graphic);
         }
     }
 
+    private void removeExpiredTracks() {
+        long timeout = trackTimeoutMillis;
+        if (0 >= timeout || null == streamServiceCallback) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (trackIdToTrack) {
+            Iterator<Track> tracks = trackIdToTrack.values().iterator();
+            while (tracks.hasNext()) {
+                Track track = tracks.next();
+                if (now - track.lastUpdateMillis > timeout) {
+                    tracks.remove();
+                    if (-1 != track.slot) {
+                        attributeStore.releaseSlot(track.slot);
+                    }
+                    if (null != track.graphic) {
+                        try {
+                            streamServiceCallback.streamFeatureRemoved(track.graphic);
+                        } catch (RuntimeException e) {
+                            // The graphic might still be in an overlay, so it must not be reused
+                            Log.e(TAG, "Could not remove expired track " + track.trackId, e);
+                            continue;
+                        }
+                        graphicPool.release(track.graphic);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onOpen(@NotNull WebSocket webSocket, @NotNull Response response) {
+        reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLIS;
+        super.onOpen(webSocket, response);
+    }
+
     @Override
     public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, @Nullable Response response) {
         // TODO do something to notify the client code and/or the user
         Log.e(TAG, "onFailure: " + t.getLocalizedMessage(), t);
+        boolean tokenRejected = null != response && StreamServices.isTokenRejected(response.code());
+        scheduleReconnect(webSocket, tokenRejected);
         super.onFailure(webSocket, t, response);
     }
 
-    /**
-     * Closes the WebSocket connection. You can start it again by calling start().
-     */
-    public void close() {
-        webSocket.close(200, "OK");
-        stopLatch.countDown();
+    @Override
+    public void onClosing(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+        webSocket.close(1000, null);
+        super.onClosing(webSocket, code, reason);
     }
 
     @Override
     public void onClosed(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
-        stopLatch.countDown();
+        // Servers close with a policy violation when the token expires
+        scheduleReconnect(webSocket, CLOSE_CODE_POLICY_VIOLATION == code);
         super.onClosed(webSocket, code, reason);
     }
 
+    private void scheduleReconnect(WebSocket failedWebSocket, boolean tokenRejected) {
+        int generation;
+        synchronized (connectionLock) {
+            if (closed || null == tokenManager || failedWebSocket != this.webSocket) {
+                return;
+            }
+            generation = this.generation;
+        }
+        long delay = reconnectDelayMillis;
+        reconnectDelayMillis = Math.min(MAX_RECONNECT_DELAY_MILLIS, 2 * reconnectDelayMillis);
+        Log.i(TAG, String.format("Reconnecting to %s in %d ms", streamServiceUrl, delay));
+        StreamServices.SCHEDULER.schedule(() -> {
+            if (closed) {
+                return;
+            }
+            if (tokenRejected) {
+                if (webSocketConnectionInfo.has("token")) {
+                    // The descriptor's token has expired; use the manager's from now on
+                    webSocketConnectionInfo.remove("token");
+                } else {
+                    // The refresh blocks on the token endpoint, so it runs on the manager's
+                    // thread rather than on the scheduler that every listener shares
+                    tokenManager.refreshAsync().whenComplete((newToken, error) -> {
+                        if (null == error) {
+                            reconnect(failedWebSocket, tokenRejected, generation);
+                        } else {
+                            Log.e(TAG, "Could not refresh token: " + error.getLocalizedMessage(), error);
+                            scheduleReconnect(failedWebSocket, tokenRejected);
+                        }
+                    });
+                    return;
+                }
+            }
+            reconnect(failedWebSocket, tokenRejected, generation);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect(WebSocket failedWebSocket, boolean tokenRejected, int generation) {
+        try {
+            connect(generation);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not reconnect: " + e.getLocalizedMessage(), e);
+            scheduleReconnect(failedWebSocket, tokenRejected);
+        }
+    }
+
+    /**
+     * Closes the WebSocket connection and stops reconnecting. If start() is still
+     * reading the descriptor when this method is called, it does not connect.
+     * You can start the listener again by calling start().
+     */
+    public void close() {
+        synchronized (connectionLock) {
+            closed = true;
+            if (null != webSocket) {
+                webSocket.close(1000, "OK");
+                webSocket = null;
+            }
+        }
+        synchronized (trackIdToTrack) {
+            if (null != expirySweep) {
+                expirySweep.cancel(false);
+                expirySweep = null;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,112 @@
+package io.github.garysheppardjr.layers;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Stream service descriptor and connection logic shared by StreamServiceListener and
+ * MissionMonitor. Nothing here depends on Android or ArcGIS Runtime.
+ */
+public final class StreamServices {
+
+    /**
+     * One client for every stream service connection in the process, and for other requests to
+     * the same servers, so that they share the client's dispatcher threads and connection pool.
+     */
+    public static final OkHttpClient SHARED_CLIENT = new OkHttpClient.Builder().build();
+
+    /**
+     * Runs delayed work such as WebSocket reconnects for every stream service
+     * connection in the process.
+     */
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, StreamServices.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // WebSockets count against the dispatcher's limits for as long as they are open
+        SHARED_CLIENT.dispatcher().setMaxRequests(Integer.MAX_VALUE);
+        SHARED_CLIENT.dispatcher().setMaxRequestsPerHost(Integer.MAX_VALUE);
+    }
+
+    private StreamServices() {
+    }
+
+    /**
+     * @param code an HTTP status code or an ArcGIS REST error code.
+     * @return true if the code means that the server rejected the request's token.
+     */
+    static boolean isTokenRejected(int code) {
+        return 401 == code || 403 == code || 498 == code || 499 == code;
+    }
+
+    static Request createDescriptorRequest(String streamServiceUrl, String token) {
+        Request.Builder builder = new Request.Builder()
+                .url(streamServiceUrl + "?f=json");
+        if (null != token) {
+            builder.addHeader("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    static String readTimeInfoField(JSONObject streamServiceJsonDescriptor, String key) throws JSONException {
+        String fieldName = null;
+        if (streamServiceJsonDescriptor.has("timeInfo")) {
+            JSONObject timeInfoObj = streamServiceJsonDescriptor.getJSONObject("timeInfo");
+            if (timeInfoObj.has(key)) {
+                fieldName = timeInfoObj.getString(key);
+            }
+        }
+        return fieldName;
+    }
+
+    static JSONObject readWebSocketConnectionInfo(JSONObject streamServiceJsonDescriptor) throws IOException, JSONException {
+        if (streamServiceJsonDescriptor.has("streamUrls")) {
+            JSONArray streamUrls = streamServiceJsonDescriptor.getJSONArray("streamUrls");
+            if (0 < streamUrls.length()) {
+                return streamUrls.getJSONObject(0);
+            } else {
+                throw new IOException("Stream service JSON descriptor's streamUrls array is empty");
+            }
+        } else {
+            throw new IOException("Stream service JSON descriptor does not contain streamUrls");
+        }
+    }
+
+    static Request createSubscribeRequest(JSONObject webSocketConnectionInfo) throws IOException, JSONException {
+        return createSubscribeRequest(webSocketConnectionInfo, null);
+    }
+
+    /**
+     * @param token a token to use if the connection info does not have its own, or null.
+     */
+    static Request createSubscribeRequest(JSONObject webSocketConnectionInfo, String token) throws IOException, JSONException {
+        if (webSocketConnectionInfo.has("urls")) {
+            JSONArray urls = webSocketConnectionInfo.getJSONArray("urls");
+            if (0 < urls.length()) {
+                Request.Builder builder = new Request.Builder().url(urls.optString(0) + "/subscribe");
+                if (webSocketConnectionInfo.has("token")) {
+                    builder.addHeader("Authorization", "Bearer " + webSocketConnectionInfo.optString("token"));
+                } else if (null != token) {
+                    builder.addHeader("Authorization", "Bearer " + token);
+                }
+                return builder.build();
+            } else {
+                throw new IOException("Stream service JSON descriptor's urls array is empty");
+            }
+        } else {
+            throw new IOException("Stream service JSON descriptor does not contain urls");
+        }
+    }
+
+}
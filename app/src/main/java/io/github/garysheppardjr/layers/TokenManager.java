@@ -0,0 +1,213 @@
+package io.github.garysheppardjr.layers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps an access token fresh for the life of a session. The manager refreshes the token a margin
+ * ahead of its expiry, so that REST calls and WebSocket reconnects always get a token that is
+ * still valid, and refreshes it on demand when a server rejects it anyway.
+ */
+public class TokenManager implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TokenManager.class.getName());
+
+    /**
+     * The default time before expiry at which the manager refreshes a token.
+     */
+    public static final long DEFAULT_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * An access token and when it expires.
+     */
+    public static class Token {
+
+        private final String value;
+        private final long expiresAtMillis;
+
+        /**
+         * @param value           the access token.
+         * @param expiresAtMillis when the token expires, in milliseconds since the epoch.
+         */
+        public Token(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+    }
+
+    /**
+     * Fetches new tokens, e.g. from an OAuth token endpoint.
+     */
+    public interface TokenSource {
+
+        /**
+         * @return a new token.
+         * @throws IOException if a token cannot be fetched.
+         */
+        Token fetchToken() throws IOException;
+
+    }
+
+    /**
+     * Notified when the manager has a new token.
+     */
+    public interface TokenListener {
+
+        /**
+         * @param token the new access token.
+         */
+        void tokenRefreshed(String token);
+
+    }
+
+    private final TokenSource tokenSource;
+    private final long refreshMarginMillis;
+    private final List<TokenListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, TokenManager.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Token token;
+    private ScheduledFuture<?> refreshFuture;
+
+    /**
+     * Instantiates a manager and schedules the first refresh.
+     *
+     * @param tokenSource         the source of new tokens.
+     * @param initialToken        the token to use until the first refresh.
+     * @param refreshMarginMillis how long before expiry to refresh a token.
+     */
+    public TokenManager(TokenSource tokenSource, Token initialToken, long refreshMarginMillis) {
+        this.tokenSource = tokenSource;
+        this.refreshMarginMillis = refreshMarginMillis;
+        synchronized (this) {
+            this.token = initialToken;
+            scheduleRefresh(initialToken.getExpiresAtMillis() - refreshMarginMillis - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the current access token.
+     */
+    public String getToken() {
+        return token.getValue();
+    }
+
+    /**
+     * Fetches a new token now, e.g. because a server rejected the current one. Concurrent callers
+     * share one fetch.
+     *
+     * @return the new access token.
+     * @throws IOException if a token cannot be fetched.
+     */
+    public String refresh() throws IOException {
+        return refresh(getToken());
+    }
+
+    /**
+     * Fetches a new token on the manager's own thread, for callers that must not block, e.g.
+     * because their thread is shared with other work.
+     *
+     * @return a future that completes with the new access token, or exceptionally if a token
+     * cannot be fetched or the manager has been closed.
+     * @see #refresh()
+     */
+    public CompletableFuture<String> refreshAsync() {
+        String rejected = getToken();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            scheduler.execute(() -> {
+                try {
+                    result.complete(refresh(rejected));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private String refresh(String rejected) throws IOException {
+        synchronized (this) {
+            if (!rejected.equals(token.getValue())) {
+                // Another caller refreshed the token while this one waited
+                return token.getValue();
+            }
+            return refreshLocked();
+        }
+    }
+
+    public void addTokenListener(TokenListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTokenListener(TokenListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops refreshing the token.
+     */
+    @Override
+    public synchronized void close() {
+        if (null != refreshFuture) {
+            refreshFuture.cancel(false);
+        }
+        scheduler.shutdownNow();
+    }
+
+    private String refreshLocked() throws IOException {
+        Token newToken = tokenSource.fetchToken();
+        token = newToken;
+        scheduleRefresh(newToken.getExpiresAtMillis() - refreshMarginMillis - System.currentTimeMillis());
+        for (TokenListener listener : listeners) {
+            listener.tokenRefreshed(newToken.getValue());
+        }
+        return newToken.getValue();
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        if (null != refreshFuture) {
+            refreshFuture.cancel(false);
+        }
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        refreshFuture = scheduler.schedule(() -> {
+            synchronized (this) {
+                try {
+                    refreshLocked();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not refresh token; retrying: " + e.getLocalizedMessage(), e);
+                    scheduleRefresh(RETRY_DELAY_MILLIS);
+                }
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,489 @@
+package io.github.garysheppardjr.layers;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the latest attributes of every track in typed primitive columns built from a stream
+ * service's field schema, with one slot per track. Strings are dictionary-encoded, so repeated
+ * values such as unit types and statuses are stored once, and a value leaves the dictionary when
+ * no slot holds it any more. GUID and GlobalID values, which are unique per row, are stored as
+ * plain strings instead.
+ * <p>
+ * Only the fields passed to setMaterializedFields are copied into graphics; the rest stay in the
+ * columns, where they cost a few bytes per track rather than a boxed object and a map entry.
+ * <p>
+ * This class is not thread-safe. StreamServiceListener uses it only while holding its track lock.
+ */
+public class TrackAttributeStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final Pattern FIELD_REFERENCE = Pattern.compile(
+            "\\[(\\w+)]|\\$feature\\.(\\w+)|\\$feature\\[\\s*[\"'](\\w+)[\"']\\s*]");
+
+    private static abstract class Column {
+
+        final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        abstract void grow(int capacity);
+
+        abstract void write(int slot, JSONObject attributes);
+
+        abstract void clear(int slot);
+
+        abstract Object get(int slot);
+
+    }
+
+    private static class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void grow(int capacity) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, capacity);
+            Arrays.fill(values, oldLength, capacity, Double.NaN);
+        }
+
+        @Override
+        void write(int slot, JSONObject attributes) {
+            values[slot] = attributes.optDouble(name, Double.NaN);
+        }
+
+        @Override
+        void clear(int slot) {
+            values[slot] = Double.NaN;
+        }
+
+        @Override
+        Object get(int slot) {
+            double value = values[slot];
+            return Double.isNaN(value) ? null : value;
+        }
+
+    }
+
+    private static class LongColumn extends Column {
+
+        private long[] values = new long[0];
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void grow(int capacity) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, capacity);
+            Arrays.fill(values, oldLength, capacity, Long.MIN_VALUE);
+        }
+
+        @Override
+        void write(int slot, JSONObject attributes) {
+            values[slot] = attributes.optLong(name, Long.MIN_VALUE);
+        }
+
+        @Override
+        void clear(int slot) {
+            values[slot] = Long.MIN_VALUE;
+        }
+
+        @Override
+        Object get(int slot) {
+            long value = values[slot];
+            return Long.MIN_VALUE == value ? null : value;
+        }
+
+    }
+
+    private static class IntColumn extends Column {
+
+        private int[] values = new int[0];
+
+        IntColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void grow(int capacity) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, capacity);
+            Arrays.fill(values, oldLength, capacity, Integer.MIN_VALUE);
+        }
+
+        @Override
+        void write(int slot, JSONObject attributes) {
+            values[slot] = attributes.optInt(name, Integer.MIN_VALUE);
+        }
+
+        @Override
+        void clear(int slot) {
+            values[slot] = Integer.MIN_VALUE;
+        }
+
+        @Override
+        Object get(int slot) {
+            int value = values[slot];
+            return Integer.MIN_VALUE == value ? null : value;
+        }
+
+    }
+
+    private class StringColumn extends Column {
+
+        private int[] codes = new int[0];
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void grow(int capacity) {
+            int oldLength = codes.length;
+            codes = Arrays.copyOf(codes, capacity);
+            Arrays.fill(codes, oldLength, capacity, -1);
+        }
+
+        @Override
+        void write(int slot, JSONObject attributes) {
+            Object value = attributes.opt(name);
+            // Encode before releasing, so that an unchanged value keeps its code
+            int code = null == value || JSONObject.NULL == value ? -1 : encode(value.toString());
+            release(codes[slot]);
+            codes[slot] = code;
+        }
+
+        @Override
+        void clear(int slot) {
+            release(codes[slot]);
+            codes[slot] = -1;
+        }
+
+        @Override
+        Object get(int slot) {
+            int code = codes[slot];
+            return -1 == code ? null : dictionary.get(code);
+        }
+
+    }
+
+    private static class UniqueStringColumn extends Column {
+
+        private String[] values = new String[0];
+
+        UniqueStringColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void write(int slot, JSONObject attributes) {
+            Object value = attributes.opt(name);
+            values[slot] = null == value || JSONObject.NULL == value ? null : value.toString();
+        }
+
+        @Override
+        void clear(int slot) {
+            values[slot] = null;
+        }
+
+        @Override
+        Object get(int slot) {
+            return values[slot];
+        }
+
+    }
+
+    private final Column[] columns;
+    private final Map<String, Column> nameToColumn = new HashMap<>();
+    private final Map<String, Integer> stringToCode = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private int[] referenceCounts = new int[0];
+    private int[] freeCodes = new int[0];
+    private int freeCodeCount = 0;
+
+    private Column[] materializedColumns;
+    private int capacity = 0;
+    private int slotCount = 0;
+    private int[] freeSlots = new int[0];
+    private int freeSlotCount = 0;
+
+    /**
+     * Builds a store from a stream service's JSON descriptor, or returns null if the descriptor
+     * does not declare its fields.
+     *
+     * @param streamServiceJsonDescriptor the stream service's JSON descriptor.
+     * @return a store with one column per supported field, or null.
+     */
+    public static TrackAttributeStore fromDescriptor(JSONObject streamServiceJsonDescriptor) {
+        JSONArray fields = streamServiceJsonDescriptor.optJSONArray("fields");
+        if (null == fields || 0 == fields.length()) {
+            return null;
+        }
+        return new TrackAttributeStore(fields);
+    }
+
+    private TrackAttributeStore(JSONArray fields) {
+        List<Column> columnList = new ArrayList<>(fields.length());
+        for (int i = 0; i < fields.length(); i++) {
+            JSONObject field = fields.optJSONObject(i);
+            if (null == field || !field.has("name")) {
+                continue;
+            }
+            String name = field.optString("name");
+            Column column;
+            switch (field.optString("type")) {
+                case "esriFieldTypeDouble":
+                case "esriFieldTypeSingle":
+                    column = new DoubleColumn(name);
+                    break;
+                case "esriFieldTypeDate":
+                    column = new LongColumn(name);
+                    break;
+                case "esriFieldTypeInteger":
+                case "esriFieldTypeSmallInteger":
+                case "esriFieldTypeOID":
+                    column = new IntColumn(name);
+                    break;
+                case "esriFieldTypeString":
+                    column = new StringColumn(name);
+                    break;
+                case "esriFieldTypeGUID":
+                case "esriFieldTypeGlobalID":
+                    column = new UniqueStringColumn(name);
+                    break;
+                default:
+                    // Geometry, blob, raster and XML fields do not belong in graphic attributes
+                    continue;
+            }
+            columnList.add(column);
+            nameToColumn.put(name, column);
+        }
+        columns = columnList.toArray(new Column[0]);
+        materializedColumns = columns;
+    }
+
+    /**
+     * Sets which fields materialize() copies into graphics, e.g. the fields that the renderer and
+     * labels use. Fields that the schema does not declare are ignored.
+     *
+     * @param fieldNames the field names, or null to materialize every field.
+     */
+    public void setMaterializedFields(Collection<String> fieldNames) {
+        if (null == fieldNames) {
+            materializedColumns = columns;
+        } else {
+            List<Column> materialized = new ArrayList<>();
+            for (Column column : columns) {
+                if (fieldNames.contains(column.name)) {
+                    materialized.add(column);
+                }
+            }
+            materializedColumns = materialized.toArray(new Column[0]);
+        }
+    }
+
+    /**
+     * @return a slot for a new track, reusing the slot of a released track if there is one.
+     */
+    public int allocateSlot() {
+        if (0 < freeSlotCount) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == capacity) {
+            capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            for (Column column : columns) {
+                column.grow(capacity);
+            }
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Clears a track's slot and makes it available to a new track.
+     *
+     * @param slot a slot returned by allocateSlot().
+     */
+    public void releaseSlot(int slot) {
+        for (Column column : columns) {
+            column.clear(slot);
+        }
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(INITIAL_CAPACITY, freeSlots.length * 2));
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Decodes an update's attributes into a track's slot. Fields that the update does not contain
+     * keep their previous values.
+     *
+     * @param slot       the track's slot.
+     * @param attributes the update's attributes.
+     */
+    public void write(int slot, JSONObject attributes) {
+        for (Column column : columns) {
+            if (attributes.has(column.name)) {
+                column.write(slot, attributes);
+            }
+        }
+    }
+
+    /**
+     * @param slot      a track's slot.
+     * @param fieldName a field name.
+     * @return the track's value for the field, or null if it has none or the field is not stored.
+     */
+    public Object get(int slot, String fieldName) {
+        Column column = nameToColumn.get(fieldName);
+        return null == column ? null : column.get(slot);
+    }
+
+    /**
+     * Copies a track's materialized fields into a graphic's attributes.
+     *
+     * @param slot   the track's slot.
+     * @param target the graphic's attributes.
+     */
+    public void materialize(int slot, Map<String, Object> target) {
+        for (Column column : materializedColumns) {
+            Object value = column.get(slot);
+            if (null == value) {
+                target.remove(column.name);
+            } else {
+                target.put(column.name, value);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct strings currently in the dictionary.
+     */
+    int getDictionarySize() {
+        return stringToCode.size();
+    }
+
+    /**
+     * Returns a string's code, adding the string to the dictionary if needed, and counts one more
+     * slot holding it.
+     */
+    private int encode(String value) {
+        Integer code = stringToCode.get(value);
+        if (null == code) {
+            if (0 < freeCodeCount) {
+                code = freeCodes[--freeCodeCount];
+                dictionary.set(code, value);
+            } else {
+                code = dictionary.size();
+                dictionary.add(value);
+                if (code == referenceCounts.length) {
+                    referenceCounts = Arrays.copyOf(referenceCounts, Math.max(INITIAL_CAPACITY, 2 * code));
+                }
+            }
+            stringToCode.put(value, code);
+        }
+        referenceCounts[code]++;
+        return code;
+    }
+
+    /**
+     * Counts one less slot holding a code, and removes its string from the dictionary when no
+     * slot holds it any more.
+     */
+    private void release(int code) {
+        if (-1 == code || 0 < --referenceCounts[code]) {
+            return;
+        }
+        stringToCode.remove(dictionary.get(code));
+        dictionary.set(code, null);
+        if (freeCodeCount == freeCodes.length) {
+            freeCodes = Arrays.copyOf(freeCodes, Math.max(INITIAL_CAPACITY, freeCodes.length * 2));
+        }
+        freeCodes[freeCodeCount++] = code;
+    }
+
+    /**
+     * Finds the fields that a stream service's renderer and labels refer to, from field
+     * properties, bracketed field names in expressions, and $feature references in Arcade.
+     *
+     * @param streamServiceJsonDescriptor the stream service's JSON descriptor.
+     * @return the referenced field names, or null if the descriptor has no drawing info.
+     */
+    public static Set<String> findDrawingFields(JSONObject streamServiceJsonDescriptor) {
+        JSONObject drawingInfo = streamServiceJsonDescriptor.optJSONObject("drawingInfo");
+        if (null == drawingInfo) {
+            return null;
+        }
+        Set<String> fieldNames = new HashSet<>();
+        try {
+            findDrawingFields(drawingInfo, fieldNames);
+        } catch (JSONException e) {
+            // Materialize everything rather than risk dropping a field the renderer needs
+            return null;
+        }
+        return fieldNames;
+    }
+
+    private static void findDrawingFields(Object json, Set<String> fieldNames) throws JSONException {
+        if (json instanceof JSONObject) {
+            JSONObject obj = (JSONObject) json;
+            JSONArray names = obj.names();
+            if (null == names) {
+                return;
+            }
+            for (int i = 0; i < names.length(); i++) {
+                String key = names.getString(i);
+                Object value = obj.get(key);
+                if (value instanceof String) {
+                    if (key.matches("field\\d?|normalizationField")) {
+                        fieldNames.add((String) value);
+                    } else if (key.endsWith("Expression") || "expression".equals(key)) {
+                        Matcher matcher = FIELD_REFERENCE.matcher((String) value);
+                        while (matcher.find()) {
+                            for (int group = 1; group <= matcher.groupCount(); group++) {
+                                if (null != matcher.group(group)) {
+                                    fieldNames.add(matcher.group(group));
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    findDrawingFields(value, fieldNames);
+                }
+            }
+        } else if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            for (int i = 0; i < array.length(); i++) {
+                findDrawingFields(array.get(i), fieldNames);
+            }
+        }
+    }
+
+}
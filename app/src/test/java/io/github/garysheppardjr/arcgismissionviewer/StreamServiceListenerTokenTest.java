@@ -0,0 +1,135 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import io.github.garysheppardjr.layers.StreamServiceListener;
+import io.github.garysheppardjr.layers.TokenManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a StreamServiceListener against a synthetic server that issues short-lived tokens and
+ * closes WebSockets whose tokens expire.
+ */
+public class StreamServiceListenerTokenTest {
+
+    private static final long TOKEN_LIFETIME_MILLIS = 2000;
+    private static final long REFRESH_MARGIN_MILLIS = 500;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    private SyntheticMissionServer server;
+    private String streamServiceUrl;
+    private TokenManager tokenManager;
+    private StreamServiceListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SyntheticMissionServer(1, 5, 10, 0, 5);
+        server.setTokenLifetime(TOKEN_LIFETIME_MILLIS);
+        server.start();
+        streamServiceUrl = server.getStreamServiceUrl(SyntheticMissionServer.getMissionId(0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != listener) {
+            listener.close();
+        }
+        if (null != tokenManager) {
+            tokenManager.close();
+        }
+        server.close();
+    }
+
+    private TokenManager createTokenManager(String initialToken, long expiresAtMillis) {
+        return new TokenManager(
+                new OAuthRefreshTokenSource(server.getSharingUrl(), "synthetic-client", "synthetic-refresh-token"),
+                new TokenManager.Token(initialToken, expiresAtMillis),
+                REFRESH_MARGIN_MILLIS
+        );
+    }
+
+    @Test
+    public void reconnectsWithFreshTokenWithoutRereadingDescriptor() throws Exception {
+        tokenManager = createTokenManager(server.issueToken(), System.currentTimeMillis() + TOKEN_LIFETIME_MILLIS);
+        listener = new StreamServiceListener(streamServiceUrl, tokenManager, null, null);
+        listener.start();
+        assertTrue("Listener did not subscribe", waitFor(() -> 1 == server.getSubscriberCount()));
+        assertEquals(1, server.getSubscribeRequests());
+
+        // The server closes the first WebSocket with 1008 when its token expires
+        assertTrue("Listener did not resubscribe after its token expired",
+                waitFor(() -> 1 < server.getSubscribeRequests() && 1 == server.getSubscriberCount()));
+        assertEquals(1, server.getDescriptorRequests());
+        assertTrue(1 < server.getTokensIssued());
+    }
+
+    @Test
+    public void startRefreshesRejectedTokenAndRetries() throws Exception {
+        // The manager thinks this token is good for an hour, but the server never issued it
+        tokenManager = createTokenManager("revoked-token", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        listener = new StreamServiceListener(streamServiceUrl, tokenManager, null, null);
+        listener.start();
+        assertTrue("Listener did not subscribe", waitFor(() -> 1 == server.getSubscriberCount()));
+        assertEquals(2, server.getDescriptorRequests());
+        assertEquals(1, server.getSubscribeRequests());
+    }
+
+    @Test
+    public void closeDuringStartPreventsConnect() throws Exception {
+        // Close the listener while start() is refreshing a rejected token, between its two descriptor reads
+        OAuthRefreshTokenSource tokenSource = new OAuthRefreshTokenSource(server.getSharingUrl(), "synthetic-client", "synthetic-refresh-token");
+        tokenManager = new TokenManager(
+                () -> {
+                    listener.close();
+                    return tokenSource.fetchToken();
+                },
+                new TokenManager.Token("revoked-token", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)),
+                REFRESH_MARGIN_MILLIS
+        );
+        listener = new StreamServiceListener(streamServiceUrl, tokenManager, null, null);
+        listener.start();
+        Thread.sleep(500);
+        assertEquals(2, server.getDescriptorRequests());
+        assertEquals(0, server.getSubscribeRequests());
+    }
+
+    @Test
+    public void restartsAfterCloseAndReplacesOpenWebSocket() throws Exception {
+        // Long-lived tokens, so that no expiry adds subscribe requests of its own
+        server.setTokenLifetime(TimeUnit.HOURS.toMillis(1));
+        tokenManager = createTokenManager(server.issueToken(), System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        listener = new StreamServiceListener(streamServiceUrl, tokenManager, null, null);
+        listener.start();
+        assertTrue("Listener did not subscribe", waitFor(() -> 1 == server.getSubscriberCount()));
+
+        listener.close();
+        assertTrue("Listener did not unsubscribe", waitFor(() -> 0 == server.getSubscriberCount()));
+        listener.start();
+        assertTrue("Listener did not resubscribe after restart",
+                waitFor(() -> 2 == server.getSubscribeRequests() && 1 == server.getSubscriberCount()));
+
+        // Starting an open listener closes its old WebSocket rather than adding a second one
+        listener.start();
+        assertTrue("Listener did not replace its WebSocket",
+                waitFor(() -> 3 == server.getSubscribeRequests() && 1 == server.getSubscriberCount()));
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,438 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * An in-process stand-in for ArcGIS Enterprise and ArcGIS Mission Server, for load testing the app's
+ * networking code under JUnit without a real deployment. It impersonates the Portal servers
+ * endpoint, the Mission Server missions list, mission item data, each mission's tracks stream
+ * service JSON descriptor, and the stream service's WebSocket subscribe endpoint.
+ * <p>
+ * Each subscribed WebSocket receives updates for a configurable number of tracks moving at a
+ * configurable rate. Updates for one tick are sent in batches spread evenly across the tick, so a
+ * batch size equal to the track count sends every update at once and a batch size of 1 spreads
+ * them out as smoothly as possible.
+ * <p>
+ * With a token lifetime set, the server also acts as an OAuth token endpoint that issues
+ * short-lived tokens for any refresh token. It then rejects descriptor and subscribe requests that
+ * lack a valid token, and closes subscribed WebSockets with a policy violation when their tokens
+ * expire.
+ */
+public class SyntheticMissionServer implements Closeable {
+
+    public static final String ORGANIZATION_ID = "synthetic-org";
+    public static final String TRACK_ID_FIELD = "track_id";
+    public static final String START_TIME_FIELD = "time";
+
+    private static final String PORTAL_PATH = "/portal/sharing/rest";
+    private static final String MISSION_SERVER_PATH = "/mission";
+    private static final String STREAM_SERVER_SUFFIX = "/tracks/StreamServer";
+
+    private final int missionCount;
+    private final int trackCount;
+    private final double updatesPerSecond;
+    private final int attributeWidth;
+    private final int batchSize;
+
+    private final MockWebServer server = new MockWebServer();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, SyntheticMissionServer.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<WebSocket> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong descriptorRequests = new AtomicLong();
+    private final AtomicLong subscribeRequests = new AtomicLong();
+    private final AtomicLong tokensIssued = new AtomicLong();
+    private final Map<String, Long> tokenExpiries = new ConcurrentHashMap<>();
+    private final Map<WebSocket, Long> subscriberTokenExpiries = new ConcurrentHashMap<>();
+    private final Random random = new Random(0);
+
+    private volatile long tokenLifetimeMillis = 0;
+    private ScheduledFuture<?> tickFuture;
+    private long tick = 0;
+
+    /**
+     * Instantiates but does not start a synthetic server. After calling the constructor, call
+     * start() to start it.
+     *
+     * @param missionCount     the number of missions the server reports.
+     * @param trackCount       the number of tracks each stream service emits.
+     * @param updatesPerSecond how many times per second each track is updated.
+     * @param attributeWidth   the number of attributes beyond the track ID and time fields that
+     *                         each update carries.
+     * @param batchSize        the number of updates sent together; each tick's updates are
+     *                         split into batches of this size.
+     * @see #start()
+     */
+    public SyntheticMissionServer(int missionCount, int trackCount, double updatesPerSecond, int attributeWidth, int batchSize) {
+        this.missionCount = missionCount;
+        this.trackCount = trackCount;
+        this.updatesPerSecond = updatesPerSecond;
+        this.attributeWidth = attributeWidth;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Starts listening on a local port and starts emitting track updates to subscribers.
+     *
+     * @throws IOException if the server cannot bind to a local port.
+     */
+    public void start() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                try {
+                    return SyntheticMissionServer.this.dispatch(request);
+                } catch (JSONException e) {
+                    return new MockResponse().setResponseCode(500).setBody(String.valueOf(e.getMessage()));
+                }
+            }
+        });
+        server.start();
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / updatesPerSecond);
+        tickFuture = scheduler.scheduleAtFixedRate(() -> emitTick(periodNanos), 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Makes the server require tokens that last the given time. Call issueToken() for a first
+     * token, or have the client use the OAuth token endpoint at getSharingUrl() + "/oauth2/token".
+     *
+     * @param tokenLifetimeMillis the lifetime of issued tokens, or 0 to not require tokens.
+     */
+    public void setTokenLifetime(long tokenLifetimeMillis) {
+        this.tokenLifetimeMillis = tokenLifetimeMillis;
+    }
+
+    /**
+     * @return a new token that lasts the configured token lifetime.
+     */
+    public String issueToken() {
+        String token = "synthetic-token-" + tokensIssued.incrementAndGet();
+        tokenExpiries.put(token, System.currentTimeMillis() + tokenLifetimeMillis);
+        return token;
+    }
+
+    /**
+     * @return the number of tokens issued so far.
+     */
+    public long getTokensIssued() {
+        return tokensIssued.get();
+    }
+
+    /**
+     * @return the number of stream service descriptor requests received so far.
+     */
+    public long getDescriptorRequests() {
+        return descriptorRequests.get();
+    }
+
+    /**
+     * @return the number of WebSocket subscribe requests received so far, including rejected ones.
+     */
+    public long getSubscribeRequests() {
+        return subscribeRequests.get();
+    }
+
+    /**
+     * @return the URL to pass to the app as the Portal URL.
+     */
+    public String getPortalUrl() {
+        return server.url("/portal").toString();
+    }
+
+    /**
+     * @return the Portal sharing URL, i.e. what Portal.getSharingUrl() returns for getPortalUrl().
+     */
+    public String getSharingUrl() {
+        return server.url(PORTAL_PATH).toString();
+    }
+
+    /**
+     * @return the Mission Server URL that the servers endpoint reports.
+     */
+    public String getMissionServerUrl() {
+        return server.url(MISSION_SERVER_PATH).toString();
+    }
+
+    /**
+     * @param missionIndex a mission index from 0 to missionCount - 1.
+     * @return the mission ID that the server uses for that index.
+     */
+    public static String getMissionId(int missionIndex) {
+        return String.format(Locale.ROOT, "mission%04d", missionIndex);
+    }
+
+    /**
+     * @param missionId a mission ID.
+     * @return the URL of the mission's tracks stream service, as MissionActivity builds it.
+     */
+    public String getStreamServiceUrl(String missionId) {
+        return getMissionServerUrl() + "/rest/services/" + missionId + STREAM_SERVER_SUFFIX;
+    }
+
+    /**
+     * @return the number of track update messages sent so far, across all subscribers.
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * @return the number of currently subscribed WebSockets.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != tickFuture) {
+            tickFuture.cancel(false);
+        }
+        scheduler.shutdownNow();
+        for (WebSocket subscriber : subscribers) {
+            subscriber.close(1001, "Server shutting down");
+        }
+        subscribers.clear();
+        server.shutdown();
+    }
+
+    private MockResponse dispatch(RecordedRequest request) throws JSONException {
+        HttpUrl url = request.getRequestUrl();
+        if (null == url) {
+            return new MockResponse().setResponseCode(400);
+        }
+        String path = url.encodedPath();
+        if (path.equals(PORTAL_PATH + "/oauth2/token")) {
+            String token = issueToken();
+            return json(new JSONObject()
+                    .put("access_token", token)
+                    .put("expires_in", Math.max(1, TimeUnit.MILLISECONDS.toSeconds(tokenLifetimeMillis))));
+        } else if (path.equals(PORTAL_PATH + "/portals/self")) {
+            return json(new JSONObject()
+                    .put("id", ORGANIZATION_ID)
+                    .put("name", "Synthetic Portal"));
+        } else if (path.equals(PORTAL_PATH + "/portals/" + ORGANIZATION_ID + "/servers")) {
+            return json(new JSONObject().put("servers", new JSONArray().put(new JSONObject()
+                    .put("id", "synthetic-mission-server")
+                    .put("serverType", "ARCGIS_MISSION_SERVER")
+                    .put("serverFunction", "MissionServer")
+                    .put("url", getMissionServerUrl()))));
+        } else if (path.equals(MISSION_SERVER_PATH + "/rest/missions")) {
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < missionCount; i++) {
+                results.put(new JSONObject().put("id", getMissionId(i)));
+            }
+            return json(new JSONObject().put("results", results));
+        } else if (path.startsWith(PORTAL_PATH + "/content/items/") && path.endsWith("/data")) {
+            String itemId = path.substring((PORTAL_PATH + "/content/items/").length(), path.length() - "/data".length());
+            return json(new JSONObject().put("maps", new JSONArray().put(itemId + "-webmap")));
+        } else if (path.startsWith(MISSION_SERVER_PATH + "/rest/services/") && path.endsWith(STREAM_SERVER_SUFFIX)) {
+            descriptorRequests.incrementAndGet();
+            if (null == readValidTokenExpiry(request)) {
+                return unauthorized();
+            }
+            return json(createStreamServiceDescriptor(url));
+        } else if (path.startsWith(MISSION_SERVER_PATH + "/rest/services/") && path.endsWith(STREAM_SERVER_SUFFIX + "/subscribe")) {
+            subscribeRequests.incrementAndGet();
+            Long tokenExpiry = readValidTokenExpiry(request);
+            if (null == tokenExpiry) {
+                return unauthorized();
+            }
+            return new MockResponse().withWebSocketUpgrade(new SubscriberListener(tokenExpiry));
+        } else {
+            return new MockResponse().setResponseCode(404);
+        }
+    }
+
+    private JSONObject createStreamServiceDescriptor(HttpUrl url) throws JSONException {
+        // HttpUrl does not accept ws schemes, so swap the scheme textually
+        String webSocketUrl = url.newBuilder().query(null).build().toString().replaceFirst("^http", "ws");
+
+        JSONArray fields = new JSONArray()
+                .put(field(TRACK_ID_FIELD, "esriFieldTypeString"))
+                .put(field(START_TIME_FIELD, "esriFieldTypeDate"))
+                .put(field("heading", "esriFieldTypeDouble"));
+        for (int i = 0; i < attributeWidth; i++) {
+            fields.put(field(attributeName(i), 0 == i % 2 ? "esriFieldTypeDouble" : "esriFieldTypeString"));
+        }
+        return new JSONObject()
+                .put("currentVersion", 10.9)
+                .put("name", "tracks")
+                .put("geometryType", "esriGeometryPoint")
+                .put("spatialReference", new JSONObject().put("wkid", 4326))
+                .put("fields", fields)
+                .put("timeInfo", new JSONObject()
+                        .put("trackIdField", TRACK_ID_FIELD)
+                        .put("startTimeField", START_TIME_FIELD))
+                .put("drawingInfo", new JSONObject().put("renderer", new JSONObject()
+                        .put("type", "simple")
+                        .put("symbol", new JSONObject()
+                                .put("type", "esriSMS")
+                                .put("style", "esriSMSCircle")
+                                .put("color", new JSONArray().put(0).put(92).put(230).put(255))
+                                .put("size", 8))))
+                .put("streamUrls", new JSONArray().put(new JSONObject()
+                        .put("transport", "ws")
+                        .put("urls", new JSONArray().put(webSocketUrl))));
+    }
+
+    /**
+     * @return when the request's token expires, Long.MAX_VALUE if tokens are not required, or null
+     * if the request has no valid token.
+     */
+    private Long readValidTokenExpiry(RecordedRequest request) {
+        if (0 >= tokenLifetimeMillis) {
+            return Long.MAX_VALUE;
+        }
+        String authorization = request.getHeader("Authorization");
+        String token = null;
+        if (null != authorization && authorization.startsWith("Bearer ")) {
+            token = authorization.substring("Bearer ".length());
+        } else if (null != request.getRequestUrl()) {
+            token = request.getRequestUrl().queryParameter("token");
+        }
+        Long expiry = null == token ? null : tokenExpiries.get(token);
+        return null == expiry || expiry <= System.currentTimeMillis() ? null : expiry;
+    }
+
+    private static MockResponse unauthorized() {
+        return new MockResponse()
+                .setResponseCode(401)
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"error\":{\"code\":498,\"message\":\"Invalid token.\"}}");
+    }
+
+    private static JSONObject field(String name, String type) throws JSONException {
+        return new JSONObject().put("name", name).put("type", type).put("alias", name);
+    }
+
+    private static String attributeName(int index) {
+        return "attr_" + index;
+    }
+
+    private static MockResponse json(JSONObject body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+
+    private void emitTick(long periodNanos) {
+        long now = System.currentTimeMillis();
+        subscriberTokenExpiries.forEach((subscriber, expiry) -> {
+            if (expiry <= now) {
+                subscriberTokenExpiries.remove(subscriber);
+                subscribers.remove(subscriber);
+                subscriber.close(1008, "Token expired");
+            }
+        });
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        long thisTick = tick++;
+        int batchCount = (trackCount + batchSize - 1) / batchSize;
+        long batchSpacingNanos = periodNanos / Math.max(1, batchCount);
+        for (int batch = 0; batch < batchCount; batch++) {
+            int firstTrack = batch * batchSize;
+            int lastTrack = Math.min(trackCount, firstTrack + batchSize);
+            Runnable sendBatch = () -> {
+                for (int track = firstTrack; track < lastTrack; track++) {
+                    String message = createTrackUpdate(track, thisTick);
+                    for (WebSocket subscriber : subscribers) {
+                        if (subscriber.send(message)) {
+                            messagesSent.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            if (0 == batch) {
+                sendBatch.run();
+            } else if (!scheduler.isShutdown()) {
+                scheduler.schedule(sendBatch, batch * batchSpacingNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private String createTrackUpdate(int track, long tick) {
+        // Each track circles its own center, one revolution per minute of updates
+        double angle = 2 * Math.PI * ((tick / updatesPerSecond) % 60) / 60;
+        double centerX = -117.2 + (track % 100) * 0.01;
+        double centerY = 34.05 + (track / 100) * 0.01;
+        StringBuilder sb = new StringBuilder(128 + 24 * attributeWidth);
+        sb.append("{\"geometry\":{\"x\":").append(centerX + 0.005 * Math.cos(angle))
+                .append(",\"y\":").append(centerY + 0.005 * Math.sin(angle))
+                .append("},\"attributes\":{\"").append(TRACK_ID_FIELD).append("\":\"track").append(track)
+                .append("\",\"").append(START_TIME_FIELD).append("\":").append(System.currentTimeMillis())
+                .append(",\"heading\":").append(Math.toDegrees(angle) + 90);
+        for (int i = 0; i < attributeWidth; i++) {
+            sb.append(",\"").append(attributeName(i)).append("\":");
+            if (0 == i % 2) {
+                sb.append(random.nextDouble());
+            } else {
+                sb.append("\"value").append(random.nextInt(16)).append('"');
+            }
+        }
+        return sb.append("}}").toString();
+    }
+
+    private class SubscriberListener extends WebSocketListener {
+
+        private final long tokenExpiry;
+
+        private SubscriberListener(long tokenExpiry) {
+            this.tokenExpiry = tokenExpiry;
+        }
+
+        @Override
+        public void onOpen(@NotNull WebSocket webSocket, @NotNull Response response) {
+            if (Long.MAX_VALUE != tokenExpiry) {
+                subscriberTokenExpiries.put(webSocket, tokenExpiry);
+            }
+            subscribers.add(webSocket);
+        }
+
+        @Override
+        public void onClosing(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+            subscribers.remove(webSocket);
+            subscriberTokenExpiries.remove(webSocket);
+            webSocket.close(code, null);
+        }
+
+        @Override
+        public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, Response response) {
+            subscribers.remove(webSocket);
+            subscriberTokenExpiries.remove(webSocket);
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package io.github.garysheppardjr.arcgismissionviewer;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that SyntheticMissionServer serves what it claims to, so that load tests built on it
+ * measure the app rather than the fixture.
+ */
+public class SyntheticMissionServerTest {
+
+    private static final int TRACK_COUNT = 20;
+    private static final double UPDATES_PER_SECOND = 5;
+    private static final int ATTRIBUTE_WIDTH = 6;
+    private static final int BATCH_SIZE = 5;
+    private static final long RUN_MILLIS = 3000;
+
+    private final OkHttpClient client = new OkHttpClient.Builder().build();
+
+    private SyntheticMissionServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SyntheticMissionServer(1, TRACK_COUNT, UPDATES_PER_SECOND, ATTRIBUTE_WIDTH, BATCH_SIZE);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        client.dispatcher().executorService().shutdown();
+    }
+
+    @Test
+    public void descriptorDeclaresTrackFieldsAndStreamUrl() throws Exception {
+        String streamServiceUrl = server.getStreamServiceUrl(SyntheticMissionServer.getMissionId(0));
+        JSONObject descriptor;
+        try (Response response = client.newCall(new Request.Builder().url(streamServiceUrl + "?f=json").build()).execute()) {
+            assertTrue(response.isSuccessful());
+            descriptor = new JSONObject(response.body().string());
+        }
+
+        // Track ID, time and heading, plus the configured attributes
+        assertEquals(3 + ATTRIBUTE_WIDTH, descriptor.getJSONArray("fields").length());
+        JSONObject timeInfo = descriptor.getJSONObject("timeInfo");
+        assertEquals(SyntheticMissionServer.TRACK_ID_FIELD, timeInfo.getString("trackIdField"));
+        assertEquals(SyntheticMissionServer.START_TIME_FIELD, timeInfo.getString("startTimeField"));
+        JSONArray urls = descriptor.getJSONArray("streamUrls").getJSONObject(0).getJSONArray("urls");
+        assertTrue(urls.getString(0).startsWith("ws"));
+        assertEquals(1, server.getDescriptorRequests());
+    }
+
+    @Test
+    public void subscriberReceivesEveryTrackAtTheConfiguredRate() throws Exception {
+        String streamServiceUrl = server.getStreamServiceUrl(SyntheticMissionServer.getMissionId(0));
+        List<String> messages = new CopyOnWriteArrayList<>();
+        CountDownLatch opened = new CountDownLatch(1);
+        WebSocket webSocket = client.newWebSocket(
+                new Request.Builder().url(streamServiceUrl + "/subscribe").build(),
+                new WebSocketListener() {
+                    @Override
+                    public void onOpen(@NotNull WebSocket webSocket, @NotNull Response response) {
+                        opened.countDown();
+                    }
+
+                    @Override
+                    public void onMessage(@NotNull WebSocket webSocket, @NotNull String text) {
+                        messages.add(text);
+                    }
+                }
+        );
+        assertTrue("WebSocket did not open", opened.await(5, TimeUnit.SECONDS));
+        long openedAt = System.nanoTime();
+        Thread.sleep(RUN_MILLIS);
+        int received = messages.size();
+        double elapsedSeconds = (System.nanoTime() - openedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        webSocket.close(1000, null);
+
+        Set<String> trackIds = new HashSet<>();
+        for (String message : messages) {
+            JSONObject attributes = new JSONObject(message).getJSONObject("attributes");
+            assertEquals(3 + ATTRIBUTE_WIDTH, attributes.length());
+            trackIds.add(attributes.getString(SyntheticMissionServer.TRACK_ID_FIELD));
+        }
+        assertEquals(TRACK_COUNT, trackIds.size());
+
+        double expectedRate = TRACK_COUNT * UPDATES_PER_SECOND;
+        double actualRate = received / elapsedSeconds;
+        assertTrue(String.format("Expected about %.0f messages/s but got %.1f", expectedRate, actualRate),
+                actualRate > 0.75 * expectedRate && actualRate < 1.25 * expectedRate);
+        assertEquals(1, server.getSubscribeRequests());
+    }
+
+}
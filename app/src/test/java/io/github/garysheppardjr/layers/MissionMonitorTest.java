@@ -0,0 +1,81 @@
+package io.github.garysheppardjr.layers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.github.garysheppardjr.arcgismissionviewer.SyntheticMissionServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Monitors many synthetic missions at once over the shared client.
+ */
+public class MissionMonitorTest {
+
+    private static final int MISSION_COUNT = 100;
+    private static final int TRACK_COUNT = 5;
+    private static final double UPDATES_PER_SECOND = 2;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private SyntheticMissionServer server;
+    private MissionMonitor monitor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SyntheticMissionServer(MISSION_COUNT, TRACK_COUNT, UPDATES_PER_SECOND, 2, TRACK_COUNT);
+        server.start();
+        monitor = new MissionMonitor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        monitor.close();
+        server.close();
+    }
+
+    @Test
+    public void monitorsOneHundredMissionsAtOnce() throws Exception {
+        List<MissionMonitor.MissionStats> allStats = new ArrayList<>(MISSION_COUNT);
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            String missionId = SyntheticMissionServer.getMissionId(i);
+            monitor.monitor(missionId, server.getStreamServiceUrl(missionId), null);
+            MissionMonitor.MissionStats stats = monitor.getStats(missionId);
+            assertNotNull(stats);
+            allStats.add(stats);
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!allReceiving(allStats) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        for (MissionMonitor.MissionStats stats : allStats) {
+            assertEquals(stats.toString(), MissionMonitor.State.OPEN, stats.getState());
+            assertTrue(stats.toString(), 0 < stats.getMessagesPerSecond());
+            assertTrue(stats.toString(), 0 < stats.getByteCount());
+        }
+        assertEquals(MISSION_COUNT, server.getSubscriberCount());
+
+        monitor.close();
+        for (MissionMonitor.MissionStats stats : allStats) {
+            assertEquals(stats.toString(), MissionMonitor.State.CLOSED, stats.getState());
+        }
+        assertTrue(monitor.getStats().isEmpty());
+    }
+
+    private static boolean allReceiving(List<MissionMonitor.MissionStats> allStats) {
+        for (MissionMonitor.MissionStats stats : allStats) {
+            if (MissionMonitor.State.OPEN != stats.getState() || 0 == stats.getMessageCount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
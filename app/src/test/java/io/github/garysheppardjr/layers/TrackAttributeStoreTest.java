@@ -0,0 +1,74 @@
+package io.github.garysheppardjr.layers;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TrackAttributeStoreTest {
+
+    private static TrackAttributeStore createStore() throws JSONException {
+        JSONArray fields = new JSONArray()
+                .put(new JSONObject().put("name", "track_id").put("type", "esriFieldTypeString"))
+                .put(new JSONObject().put("name", "status").put("type", "esriFieldTypeString"))
+                .put(new JSONObject().put("name", "gid").put("type", "esriFieldTypeGUID"))
+                .put(new JSONObject().put("name", "speed").put("type", "esriFieldTypeDouble"));
+        return TrackAttributeStore.fromDescriptor(new JSONObject().put("fields", fields));
+    }
+
+    private static JSONObject update(int track, String status) throws JSONException {
+        return new JSONObject()
+                .put("track_id", "track" + track)
+                .put("status", status)
+                .put("gid", "{" + track + "-guid}")
+                .put("speed", track * 0.5);
+    }
+
+    @Test
+    public void storesAndMaterializesTypedValues() throws JSONException {
+        TrackAttributeStore store = createStore();
+        int slot = store.allocateSlot();
+        store.write(slot, update(7, "moving"));
+
+        Map<String, Object> attributes = new HashMap<>();
+        store.materialize(slot, attributes);
+        assertEquals("track7", attributes.get("track_id"));
+        assertEquals("moving", attributes.get("status"));
+        assertEquals("{7-guid}", attributes.get("gid"));
+        assertEquals(3.5, attributes.get("speed"));
+
+        store.write(slot, new JSONObject().put("status", JSONObject.NULL));
+        assertNull(store.get(slot, "status"));
+        assertEquals("track7", store.get(slot, "track_id"));
+    }
+
+    @Test
+    public void dictionaryDoesNotGrowWithTrackTurnover() throws JSONException {
+        TrackAttributeStore store = createStore();
+        Deque<Integer> liveSlots = new ArrayDeque<>();
+        for (int track = 0; track < 10000; track++) {
+            int slot = store.allocateSlot();
+            store.write(slot, update(track, 0 == track % 2 ? "moving" : "stopped"));
+            liveSlots.add(slot);
+            if (100 < liveSlots.size()) {
+                store.releaseSlot(liveSlots.poll());
+            }
+        }
+        // 100 live track IDs plus the two statuses; GUIDs are not dictionary-encoded
+        assertEquals(102, store.getDictionarySize());
+
+        while (!liveSlots.isEmpty()) {
+            store.releaseSlot(liveSlots.poll());
+        }
+        assertEquals(0, store.getDictionarySize());
+    }
+
+}